@@ -0,0 +1,98 @@
+package org.dase.cogan.owl2dl_m.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.dase.cogan.owl2dl_m.EntityAxiomIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+/**
+ * Grouping the axioms of every class, property and individual by entity: the
+ * per-entity lookups and sorts by axiom type that the renderer used to do,
+ * against building and reading an {@link EntityAxiomIndex}. Both return the
+ * number of axioms grouped, which is the same.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AxiomIndexBenchmark
+{
+	private static final Comparator<OWLAxiom>	BY_TYPE	= Comparator
+	        .comparingInt(axiom -> axiom.getAxiomType().getIndex());
+
+	@Param({ "1000", "10000" })
+	public int									classes;
+
+	private OWLOntology							ontology;
+	private List<OWLEntity>						entities;
+
+	@Setup
+	public void setUp() throws OWLOntologyCreationException
+	{
+		ontology = Fixtures.ontology(classes, 42);
+		entities = new ArrayList<>();
+		ontology.classesInSignature().forEach(entities::add);
+		ontology.objectPropertiesInSignature().forEach(entities::add);
+		ontology.dataPropertiesInSignature().forEach(entities::add);
+		ontology.individualsInSignature().forEach(entities::add);
+	}
+
+	@Benchmark
+	public long lookup()
+	{
+		long axioms = 0;
+		for(OWLEntity entity : entities)
+		{
+			List<? extends OWLAxiom> sorted = axioms(entity).sorted(BY_TYPE).collect(Collectors.toList());
+			axioms += sorted.size();
+		}
+		return axioms;
+	}
+
+	@Benchmark
+	public long index()
+	{
+		EntityAxiomIndex index = EntityAxiomIndex.build(ontology);
+		long axioms = 0;
+		for(OWLEntity entity : entities)
+		{
+			axioms += index.axioms(entity).size();
+		}
+		return axioms;
+	}
+
+	/**
+	 * @return the axioms of the lookup the renderer used for the entity
+	 */
+	private Stream<? extends OWLAxiom> axioms(OWLEntity entity)
+	{
+		if(entity.isOWLClass())
+			return ontology.axioms(entity.asOWLClass());
+		if(entity.isOWLObjectProperty())
+			return ontology.axioms(entity.asOWLObjectProperty());
+		if(entity.isOWLDataProperty())
+			return ontology.axioms(entity.asOWLDataProperty());
+		return ontology.axioms(entity.asOWLNamedIndividual());
+	}
+}
@@ -0,0 +1,30 @@
+package org.dase.cogan.owl2dl_m.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, which adds the allocation rate and
+ * the bytes allocated per operation ({@code gc.alloc.rate.norm}) to the
+ * results. Allocation is often the first thing a change to these paths moves.
+ * <p>
+ * Usage: {@code BenchmarkRunner [regexp]}, e.g. {@code BenchmarkRunner Line}
+ * for {@link LineBenchmark} only.
+ */
+public class BenchmarkRunner
+{
+	public static void main(String[] args) throws RunnerException
+	{
+		Options options = new OptionsBuilder()
+		        .include(args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*")
+		        .addProfiler(GCProfiler.class)
+		        // Large heap so collections are rare and allocation shows
+		        // as allocation rather than as GC time
+		        .jvmArgsAppend("-Xms2g", "-Xmx2g")
+		        .build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,173 @@
+package org.dase.cogan.owl2dl_m.benchmarks;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLDataProperty;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Deterministic inputs shared by the benchmarks.
+ */
+final class Fixtures
+{
+	static final String	NS	= "http://example.org/bench#";
+
+	private Fixtures()
+	{
+	}
+
+	/**
+	 * Builds an ontology with the given number of classes, a tenth as many
+	 * object and data properties and individuals, and a mix of subclass,
+	 * equivalence, property and assertion axioms.
+	 *
+	 * @param classes
+	 * @param seed
+	 * @return the ontology
+	 * @throws OWLOntologyCreationException
+	 */
+	static OWLOntology ontology(int classes, long seed) throws OWLOntologyCreationException
+	{
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		OWLDataFactory df = manager.getOWLDataFactory();
+		OWLOntology o = manager.createOntology(IRI.create(NS));
+		Random random = new Random(seed);
+
+		int others = Math.max(1, classes / 10);
+		List<OWLClass> clses = new ArrayList<>();
+		List<OWLObjectProperty> objectProperties = new ArrayList<>();
+		List<OWLDataProperty> dataProperties = new ArrayList<>();
+		List<OWLNamedIndividual> individuals = new ArrayList<>();
+		for(int i = 0; i < classes; i++)
+		{
+			clses.add(df.getOWLClass(IRI.create(NS, "Class_" + i)));
+		}
+		for(int i = 0; i < others; i++)
+		{
+			objectProperties.add(df.getOWLObjectProperty(IRI.create(NS, "hasPart_" + i)));
+			dataProperties.add(df.getOWLDataProperty(IRI.create(NS, "value_" + i)));
+			individuals.add(df.getOWLNamedIndividual(IRI.create(NS, "ind_" + i)));
+		}
+
+		List<OWLAxiom> axioms = new ArrayList<>();
+		for(int i = 0; i < classes; i++)
+		{
+			OWLClass cls = clses.get(i);
+			axioms.add(df.getOWLSubClassOfAxiom(cls, pick(random, clses)));
+			axioms.add(df.getOWLSubClassOfAxiom(cls, df.getOWLObjectSomeValuesFrom(pick(random, objectProperties),
+			        df.getOWLObjectIntersectionOf(pick(random, clses), pick(random, clses)))));
+			if(i % 5 == 0)
+			{
+				axioms.add(df.getOWLEquivalentClassesAxiom(cls, expression(df, random, clses, objectProperties, 3)));
+			}
+		}
+		for(OWLObjectProperty p : objectProperties)
+		{
+			axioms.add(df.getOWLObjectPropertyDomainAxiom(p, pick(random, clses)));
+			axioms.add(df.getOWLObjectPropertyRangeAxiom(p, pick(random, clses)));
+			axioms.add(df.getOWLSubObjectPropertyOfAxiom(p, pick(random, objectProperties)));
+		}
+		for(OWLDataProperty p : dataProperties)
+		{
+			axioms.add(df.getOWLDataPropertyDomainAxiom(p, pick(random, clses)));
+			axioms.add(df.getOWLDataPropertyRangeAxiom(p, df.getIntegerOWLDatatype()));
+		}
+		for(OWLNamedIndividual ind : individuals)
+		{
+			axioms.add(df.getOWLClassAssertionAxiom(pick(random, clses), ind));
+			axioms.add(df.getOWLObjectPropertyAssertionAxiom(pick(random, objectProperties), ind,
+			        pick(random, individuals)));
+			axioms.add(df.getOWLDataPropertyAssertionAxiom(pick(random, dataProperties), ind, random.nextInt(100)));
+		}
+		manager.addAxioms(o, axioms.stream());
+		return o;
+	}
+
+	/**
+	 * @return a nested class expression of the given depth
+	 */
+	static OWLClassExpression expression(OWLDataFactory df, Random random, List<OWLClass> clses,
+	        List<OWLObjectProperty> properties, int depth)
+	{
+		if(depth == 0)
+			return pick(random, clses);
+
+		OWLClassExpression inner = expression(df, random, clses, properties, depth - 1);
+		switch(random.nextInt(4))
+		{
+			case 0:
+				return df.getOWLObjectIntersectionOf(pick(random, clses), inner);
+			case 1:
+				return df.getOWLObjectUnionOf(pick(random, clses), inner);
+			case 2:
+				return df.getOWLObjectAllValuesFrom(pick(random, properties), inner);
+			default:
+				return df.getOWLObjectSomeValuesFrom(pick(random, properties), inner);
+		}
+	}
+
+	/**
+	 * Builds a rendered line like those of an entity section, of about the
+	 * given length.
+	 *
+	 * @param length
+	 * @return the line
+	 */
+	static String line(int length)
+	{
+		StringBuilder line = new StringBuilder("\\text{Class\\_0} &\\sqsubseteq ");
+		for(int i = 1; line.length() < length; i++)
+		{
+			line.append(i % 2 == 0 ? " \\sqcap " : " \\sqcup ");
+			line.append("\\exists \\text{hasPart\\_").append(i).append("}.\\text{Class\\_").append(i).append('}');
+		}
+		return line.toString();
+	}
+
+	private static <T> T pick(Random random, List<T> list)
+	{
+		return list.get(random.nextInt(list.size()));
+	}
+
+	/** Discards everything, so that benchmarks measure no IO. */
+	static final class NullWriter extends Writer
+	{
+		@Override
+		public void write(char[] cbuf, int off, int len)
+		{
+		}
+
+		@Override
+		public void write(String str, int off, int len)
+		{
+		}
+
+		@Override
+		public void write(int c)
+		{
+		}
+
+		@Override
+		public void flush()
+		{
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
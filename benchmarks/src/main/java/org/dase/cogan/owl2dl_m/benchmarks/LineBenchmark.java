@@ -0,0 +1,70 @@
+package org.dase.cogan.owl2dl_m.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.dase.cogan.owl2dl_m.App;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Line post-processing: width estimation and splitting of long lines. Lines
+ * of up to 125 characters are left alone, longer ones are split.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineBenchmark
+{
+	@Param({ "80", "400", "4000" })
+	public int				length;
+
+	private String			line;
+	private StringBuilder	out;
+
+	@Setup
+	public void setUp()
+	{
+		line = Fixtures.line(length);
+		out = new StringBuilder(2 * line.length());
+	}
+
+	@Benchmark
+	public int getLineLength()
+	{
+		return App.getLineLength(line);
+	}
+
+	@Benchmark
+	public String findSplit()
+	{
+		return App.findSplit(line);
+	}
+
+	@Benchmark
+	public String splitLine()
+	{
+		return App.splitLine(line);
+	}
+
+	/** The allocation-free variant used by the output pipeline. */
+	@Benchmark
+	public int splitLineInto() throws IOException
+	{
+		out.setLength(0);
+		App.splitLine(line, out);
+		return out.length();
+	}
+}
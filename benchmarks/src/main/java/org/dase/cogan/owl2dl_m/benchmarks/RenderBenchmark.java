@@ -0,0 +1,87 @@
+package org.dase.cogan.owl2dl_m.benchmarks;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.dase.cogan.owl2dl_m.LineWrappingWriter;
+import org.dase.cogan.owl2dl_m.MyLatexRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.semanticweb.owlapi.io.OWLRendererException;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+/**
+ * Whole documents: rendering an ontology, post-processing a rendered
+ * document, and both as the conversion pipeline runs them. Output is
+ * discarded, so no IO is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark
+{
+	@Param({ "1000", "10000" })
+	public int				classes;
+
+	@Param({ "false", "true" })
+	public boolean			parallel;
+
+	@Param({ "0", "4096" })
+	public int				expressionCache;
+
+	private OWLOntology		ontology;
+	private MyLatexRenderer	renderer;
+	private String			document;
+
+	@Setup
+	public void setUp() throws OWLOntologyCreationException, OWLRendererException
+	{
+		ontology = Fixtures.ontology(classes, 42);
+		renderer = new MyLatexRenderer();
+		renderer.setParallel(parallel);
+		renderer.setExpressionCacheSize(expressionCache);
+
+		StringWriter rendered = new StringWriter();
+		renderer.render(ontology, new PrintWriter(rendered));
+		document = rendered.toString();
+	}
+
+	@Benchmark
+	public void render() throws OWLRendererException
+	{
+		renderer.render(ontology, new PrintWriter(new Fixtures.NullWriter()));
+	}
+
+	@Benchmark
+	public void postProcess() throws IOException
+	{
+		try(Writer out = new LineWrappingWriter(new Fixtures.NullWriter()))
+		{
+			out.write(document);
+		}
+	}
+
+	@Benchmark
+	public void renderAndPostProcess() throws OWLRendererException
+	{
+		PrintWriter out = new PrintWriter(new LineWrappingWriter(new Fixtures.NullWriter()));
+		renderer.render(ontology, out);
+		out.close();
+	}
+}
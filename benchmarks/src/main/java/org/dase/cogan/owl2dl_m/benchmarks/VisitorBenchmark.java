@@ -0,0 +1,139 @@
+package org.dase.cogan.owl2dl_m.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.dase.cogan.owl2dl_m.LatexSink;
+import org.dase.cogan.owl2dl_m.MyLatexObjectVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLDataProperty;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+
+/**
+ * Rendering of single axioms by {@link MyLatexObjectVisitor}, one axiom type
+ * per parameter value, into a reused buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisitorBenchmark
+{
+	@Param({ "SubClassOf", "SubClassOfNested", "EquivalentClasses", "DisjointClasses", "ObjectPropertyDomain",
+	        "ObjectPropertyRange", "SubObjectPropertyOf", "SubPropertyChainOf", "DataPropertyRange",
+	        "ClassAssertion", "ObjectPropertyAssertion", "DataPropertyAssertion" })
+	public String					axiomType;
+
+	private OWLAxiom				axiom;
+	private OWLClass				subject;
+	private LatexSink				sink;
+	private MyLatexObjectVisitor	visitor;
+
+	@Setup
+	public void setUp()
+	{
+		OWLDataFactory df = OWLManager.getOWLDataFactory();
+		Random random = new Random(42);
+		List<OWLClass> clses = new ArrayList<>();
+		List<OWLObjectProperty> properties = new ArrayList<>();
+		for(int i = 0; i < 8; i++)
+		{
+			clses.add(df.getOWLClass(IRI.create(Fixtures.NS, "Class_" + i)));
+			properties.add(df.getOWLObjectProperty(IRI.create(Fixtures.NS, "hasPart_" + i)));
+		}
+		OWLClass a = clses.get(0);
+		OWLClass b = clses.get(1);
+		OWLObjectProperty p = properties.get(0);
+		OWLObjectProperty q = properties.get(1);
+		OWLDataProperty d = df.getOWLDataProperty(IRI.create(Fixtures.NS, "value"));
+		OWLNamedIndividual x = df.getOWLNamedIndividual(IRI.create(Fixtures.NS, "x"));
+		OWLNamedIndividual y = df.getOWLNamedIndividual(IRI.create(Fixtures.NS, "y"));
+
+		subject = a;
+		switch(axiomType)
+		{
+			case "SubClassOf":
+				axiom = df.getOWLSubClassOfAxiom(a, b);
+				break;
+			case "SubClassOfNested":
+				axiom = df.getOWLSubClassOfAxiom(a, Fixtures.expression(df, random, clses, properties, 6));
+				break;
+			case "EquivalentClasses":
+				axiom = df.getOWLEquivalentClassesAxiom(a, Fixtures.expression(df, random, clses, properties, 3));
+				break;
+			case "DisjointClasses":
+				axiom = df.getOWLDisjointClassesAxiom(clses.subList(0, 4));
+				break;
+			case "ObjectPropertyDomain":
+				subject = null;
+				axiom = df.getOWLObjectPropertyDomainAxiom(p, b);
+				break;
+			case "ObjectPropertyRange":
+				subject = null;
+				axiom = df.getOWLObjectPropertyRangeAxiom(p, df.getOWLObjectUnionOf(a, b));
+				break;
+			case "SubObjectPropertyOf":
+				subject = null;
+				axiom = df.getOWLSubObjectPropertyOfAxiom(p, q);
+				break;
+			case "SubPropertyChainOf":
+				subject = null;
+				axiom = df.getOWLSubPropertyChainOfAxiom(Arrays.asList(p, q, properties.get(2)), p);
+				break;
+			case "DataPropertyRange":
+				subject = null;
+				axiom = df.getOWLDataPropertyRangeAxiom(d, df.getIntegerOWLDatatype());
+				break;
+			case "ClassAssertion":
+				subject = null;
+				axiom = df.getOWLClassAssertionAxiom(a, x);
+				break;
+			case "ObjectPropertyAssertion":
+				subject = null;
+				axiom = df.getOWLObjectPropertyAssertionAxiom(p, x, y);
+				break;
+			case "DataPropertyAssertion":
+				subject = null;
+				axiom = df.getOWLDataPropertyAssertionAxiom(d, x, 42);
+				break;
+			default:
+				throw new IllegalArgumentException(axiomType);
+		}
+
+		sink = new LatexSink();
+		visitor = new MyLatexObjectVisitor(sink, df);
+		if(subject != null)
+		{
+			visitor.setSubject(subject);
+		}
+	}
+
+	@Benchmark
+	public int visit()
+	{
+		sink.clear();
+		axiom.accept(visitor);
+		return sink.length();
+	}
+}
@@ -4,20 +4,29 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.io.OWLRendererException;
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.MissingImportHandlingStrategy;
 import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyAlreadyExistsException;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyDocumentAlreadyExistsException;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
 
 import javafx.application.Application;
@@ -31,7 +40,6 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
-import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
@@ -48,59 +56,368 @@ public class App extends Application
 
 	private static TextField		inputField;
 	private static TextField		outputField;
+	private static TextField		threadsField;
+	private static TextField		timeoutField;
 	private static List<File>		files;
 	private static File				outputDir;
 
-	private static TextArea			log;
+	/** Number of files converted concurrently by {@link #convertFiles(List)}. */
+	private static int				parallelism	= Runtime.getRuntime().availableProcessors();
+	/** Whether entity sections of a single document are rendered concurrently. */
+	private static boolean			parallelRender;
+	/** Maximum number of memoized class expressions per document, 0 for none. */
+	private static int				expressionCacheSize;
+	/** Whether documents are written as gzipped .tex.gz files. */
+	private static boolean			gzipOutput;
+	/** Name of a zip archive receiving all documents of a batch, or null. */
+	private static String			zipArchive;
+	/** Whether functional syntax input is rendered without loading it whole. */
+	private static boolean			streaming;
+	/** Whether imports are only resolved from {@link #catalogs}, never fetched. */
+	private static boolean			offline;
+	/** Directories and XML catalogs used to resolve imports offline. */
+	private static List<File>		catalogs	= new ArrayList<>();
+	/** Directory of the per-document {@link RenderCache}s, or null for none. */
+	private static File				renderCacheDir;
+	private static final LongAdder	renderCacheHits		= new LongAdder();
+	private static final LongAdder	renderCacheMisses	= new LongAdder();
+	/** Whether outputs newer than their input are converted again anyway. */
+	private static boolean			force;
+	/** Whether input hashes are kept in a {@link Manifest} to detect changes. */
+	private static boolean			useManifest;
+	/** Names of the files taken from input directories. */
+	private static String			include				= InputScanner.DEFAULT_INCLUDE;
+	/** Whether the inputs are converted again whenever they change. */
+	private static boolean			watch;
+	/** How long changes must pause before a watched input is converted. */
+	private static long				debounceMillis		= 300;
+	/** Where the JSON report of a batch is written, or null for the output directory. */
+	private static File				reportFile;
+	/** Wall-clock budget of each file, 0 for none. */
+	private static long				timeoutMillis;
+	/** Port of the conversion server, 0 to convert files instead. */
+	private static int				servePort;
+	/** Requests waiting for a worker of the server, 0 for the default. */
+	private static int				queueLimit;
+	/** Most entities per part file of a document, 0 for one file. */
+	private static int				partSize;
+	/** Heap bytes that concurrent conversions may need together, or 0. */
+	private static long				heapBudget;
+	/** Cancels the running batch. */
+	private static volatile Cancellation	batchCancellation	= Cancellation.create();
+
+	/** Lines of the GUI log kept on screen; the rest is only in its file. */
+	private static final int		LOG_LINES			= 5000;
+	private static LogView			log;
 
 	public static void main(String[] args)
 	{
+		// Split the arguments into options and positional arguments
+		List<String> positional = new ArrayList<>();
+		for(int i = 0; i < args.length; i++)
+		{
+			if((args[i].equals("-j") || args[i].equals("--threads")) && i + 1 < args.length)
+			{
+				parallelism = parsePositive(args[++i]);
+				if(parallelism < 1)
+				{
+					System.out.println("Invalid thread count: " + args[i] + ", it must be a positive integer.");
+				}
+			}
+			else if(args[i].equals("--parallel-render"))
+			{
+				parallelRender = true;
+			}
+			else if(args[i].equals("--expression-cache") && i + 1 < args.length)
+			{
+				expressionCacheSize = parseNonNegative(args[++i]);
+				if(expressionCacheSize < 0)
+				{
+					System.out.println("Invalid expression cache size: " + args[i] + ", it must be 0 or a positive integer.");
+				}
+			}
+			else if(args[i].equals("--offline"))
+			{
+				offline = true;
+			}
+			else if(args[i].equals("--catalog") && i + 1 < args.length)
+			{
+				// A catalog only makes sense offline
+				offline = true;
+				catalogs.add(new File(args[++i]));
+			}
+			else if(args[i].equals("--render-cache") && i + 1 < args.length)
+			{
+				renderCacheDir = new File(args[++i]);
+			}
+			else if(args[i].equals("--streaming"))
+			{
+				streaming = true;
+			}
+			else if(args[i].equals("--gzip"))
+			{
+				gzipOutput = true;
+			}
+			else if(args[i].equals("--zip") && i + 1 < args.length)
+			{
+				zipArchive = args[++i];
+			}
+			else if(args[i].equals("--force"))
+			{
+				force = true;
+			}
+			else if(args[i].equals("--manifest"))
+			{
+				useManifest = true;
+			}
+			else if(args[i].equals("--include") && i + 1 < args.length)
+			{
+				include = args[++i];
+			}
+			else if(args[i].equals("--timeout") && i + 1 < args.length)
+			{
+				int seconds = parseNonNegative(args[++i]);
+				if(seconds < 0)
+				{
+					System.out.println("Invalid timeout: " + args[i] + ", it must be 0 or a positive number of seconds.");
+				}
+				timeoutMillis = seconds * 1000L;
+			}
+			else if(args[i].equals("--serve") && i + 1 < args.length)
+			{
+				servePort = parsePositive(args[++i]);
+			}
+			else if(args[i].equals("--queue") && i + 1 < args.length)
+			{
+				queueLimit = parsePositive(args[++i]);
+			}
+			else if(args[i].equals("--chunk") && i + 1 < args.length)
+			{
+				partSize = parsePositive(args[++i]);
+				if(partSize < 1)
+				{
+					System.out.println("Invalid part size: " + args[i] + ", it must be a positive integer.");
+				}
+			}
+			else if(args[i].equals("--heap-budget") && i + 1 < args.length)
+			{
+				heapBudget = parseSize(args[++i]);
+			}
+			else if(args[i].equals("--report") && i + 1 < args.length)
+			{
+				reportFile = new File(args[++i]);
+			}
+			else if(args[i].equals("--watch"))
+			{
+				watch = true;
+			}
+			else if(args[i].equals("--debounce") && i + 1 < args.length)
+			{
+				debounceMillis = parseNonNegative(args[++i]);
+				if(debounceMillis < 0)
+				{
+					System.out.println("Invalid debounce: " + args[i] + ", it must be 0 or a positive number of milliseconds.");
+				}
+			}
+			else
+			{
+				positional.add(args[i]);
+			}
+		}
+
+		if(partSize > 0 && gzipOutput)
+		{
+			System.out.println("--chunk cannot be combined with --gzip");
+		}
+
 		// If there are no arguments, run the gui
 		if(args.length == 0)
 		{
 			launch();
 		}
-		// If there are exactly 2 arguments, assume to run command tool
-		else if(args.length == 2)
+		// A port runs the conversion server
+		else if(servePort > 0 && positional.isEmpty() && parallelism > 0 && queueLimit >= 0 && expressionCacheSize >= 0
+		        && timeoutMillis >= 0)
+		{
+			serve();
+		}
+		// Inputs followed by the output directory run the command tool
+		else if(positional.size() >= 2 && parallelism > 0 && heapBudget >= 0 && partSize >= 0
+		        && !(partSize > 0 && gzipOutput) && expressionCacheSize >= 0 && timeoutMillis >= 0 && debounceMillis >= 0)
 		{
 			System.out.println("Welcome to the console tool.");
 
 			try
 			{
-				System.out.println("Fetching file: " + args[0]);
-
-				File input = new File(args[0]);
-				File output = new File(args[1]);
+				File output = new File(positional.get(positional.size() - 1));
 
-				if(!input.exists())
-					throw new FileNotFoundException(args[0]);
-
-				if(output.exists())
-					throw new FileNotFoundException(args[1]);
+				// Expand directories and patterns; the first input wins an output name
+				InputScanner scanner = new InputScanner(include);
+				List<InputScanner.Source> sources = new ArrayList<>();
+				Map<String, InputFile> inputs = new LinkedHashMap<>();
+				for(String arg : positional.subList(0, positional.size() - 1))
+				{
+					System.out.println("Fetching: " + arg);
+					InputScanner.Source source = scanner.source(arg);
+					sources.add(source);
+					for(InputFile input : source.scan())
+					{
+						InputFile previous = inputs.putIfAbsent(input.getOutputName(), input);
+						if(previous != null)
+						{
+							System.out.println("Ignoring " + input + ", its output would replace that of " + previous);
+						}
+					}
+				}
 
-				List<File> files = new ArrayList<>();
-				files.add(input);
+				if(!output.isDirectory() && !output.mkdirs())
+					throw new FileNotFoundException(output.toString());
 
 				outputDir = output;
-				convertFiles(files);
+				if(watch)
+				{
+					watchInputs(sources, new ArrayList<>(inputs.values()));
+				}
+				else
+				{
+					convertInputs(new ArrayList<>(inputs.values()), !force);
+				}
 
 			}
 			catch(FileNotFoundException e)
 			{
 				System.out.println("Could not find file: " + e.getMessage());
 			}
+			catch(IOException e)
+			{
+				System.out.println("Could not list inputs: " + e.getMessage());
+			}
 
 		}
 		// If there is an incorrect number of arguments, print help
 		else
 		{
 			System.out.println("Please use the following syntax: ");
-			System.out.println("java GUI_Converter.jar input.owl /output");
-			System.out.println("At this point in the time, the tool does not support input directories.");
+			System.out.println("java GUI_Converter.jar --serve port [-j threads] [--queue requests] [--parallel-render] [--expression-cache size] [--timeout seconds]");
+			System.out.println("java GUI_Converter.jar [-j threads] [--parallel-render] [--expression-cache size] [--offline] [--catalog dir|catalog.xml] [--render-cache dir] [--streaming] [--gzip | --zip archive.zip] [--force] [--manifest] [--include pattern] [--watch [--debounce ms]] [--report report.json] [--timeout seconds] [--heap-budget size] [--chunk entities] input... /output");
+			System.out.println("An input is a file, a directory searched recursively for files matching the include pattern");
+			System.out.println("(default " + InputScanner.DEFAULT_INCLUDE + "), or a quoted glob such as 'onts/**/*.owl'.");
+			System.out.println("Outputs keep the input's path below the directory or pattern prefix. Outputs newer than");
+			System.out.println("their input, or with an unchanged input hash when using --manifest, are skipped unless --force.");
+			System.out.println("With --watch, inputs are converted again whenever they are saved, until interrupted.");
+			System.out.println("A relative zip archive is created in the output directory.");
+			System.out.println("--timeout aborts a file that takes longer and continues with the next one.");
+			System.out.println("--chunk writes each document as a master file that \\includes its sections in parts of at most");
+			System.out.println("that many entities, in a directory named after the document plus -parts. Not with --gzip.");
+			System.out.println("--heap-budget (e.g. 6g or 75%) runs at most -j files at once, and fewer while their estimated");
+			System.out.println("heap need, learned from earlier runs, would exceed the budget.");
+			System.out.println("--serve converts ontologies POSTed to http://localhost:port/convert, -j at once with --queue more");
+			System.out.println("waiting (default twice -j); metrics are at /metrics.");
+			System.out.println("Timings and sizes of each run are written to " + ConversionReport.FILE_NAME + " in the output directory, or to --report.");
 			System.out.println("Exiting...");
 		}
 	}
 
+	/**
+	 * Runs the conversion server until the JVM is stopped.
+	 */
+	private static void serve()
+	{
+		MyLatexRenderer latex = new MyLatexRenderer();
+		latex.setParallel(parallelRender);
+		latex.setExpressionCacheSize(expressionCacheSize);
+		int queue = queueLimit > 0 ? queueLimit : 2 * parallelism;
+
+		try
+		{
+			ConversionServer server = new ConversionServer(servePort, parallelism, queue, latex,
+			        () -> createManager(null), timeoutMillis);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(5)));
+			server.start();
+			System.out.println("Serving on http://" + server.getAddress().getHostString() + ":" + servePort
+			        + "/convert with " + parallelism + " workers and " + queue + " queued requests.");
+		}
+		catch(IOException e)
+		{
+			System.out.println("Could not start the server: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Parses a numeric option such as a thread count.
+	 * 
+	 * @param value
+	 * @return the value, or -1 if it is not a positive integer
+	 */
+	private static int parsePositive(String value)
+	{
+		try
+		{
+			int number = Integer.parseInt(value.trim());
+			return number > 0 ? number : -1;
+		}
+		catch(NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * Parses a numeric option where 0 turns a feature off, such as a timeout.
+	 * 
+	 * @param value
+	 * @return the value, or -1 if it is neither 0 nor a positive integer
+	 */
+	private static int parseNonNegative(String value)
+	{
+		return value.trim().equals("0") ? 0 : parsePositive(value);
+	}
+
+	/**
+	 * Parses a heap size such as 512m, 6g or 75% of the maximum heap.
+	 * 
+	 * @param value
+	 * @return the size in bytes, or -1 if it is not a positive size
+	 */
+	private static long parseSize(String value)
+	{
+		String size = value.trim().toLowerCase(Locale.ROOT);
+		if(size.isEmpty())
+			return -1;
+
+		long unit = 1;
+		char suffix = size.charAt(size.length() - 1);
+		if(suffix == '%')
+		{
+			int percent = parsePositive(size.substring(0, size.length() - 1));
+			return percent > 0 && percent <= 100 ? Runtime.getRuntime().maxMemory() / 100 * percent : -1;
+		}
+		else if(suffix == 'k' || suffix == 'm' || suffix == 'g')
+		{
+			unit = suffix == 'k' ? 1L << 10 : suffix == 'm' ? 1L << 20 : 1L << 30;
+			size = size.substring(0, size.length() - 1);
+		}
+
+		try
+		{
+			long number = Long.parseLong(size);
+			return number > 0 && number <= Long.MAX_VALUE / unit ? number * unit : -1;
+		}
+		catch(NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	@Override
+	public void stop()
+	{
+		if(log != null)
+		{
+			log.close();
+		}
+	}
+
 	@Override
 	public void start(Stage stage)
 	{
@@ -169,11 +486,24 @@ public class App extends Application
 		gui.add(outputInstruct, 1, 2);
 		gui.add(outputField, 2, 2);
 		gui.add(outputButton, 3, 2);
+
+		// Parallelism
+		Label threadsInstruct = new Label("Parallel Conversions: ");
+		this.threadsField = new TextField(Integer.toString(parallelism));
+
+		gui.add(threadsInstruct, 1, 3);
+		gui.add(threadsField, 2, 3);
+
+		// Time budget
+		Label timeoutInstruct = new Label("Time Limit per File (s, 0 for none): ");
+		this.timeoutField = new TextField(Long.toString(timeoutMillis / 1000));
+
+		gui.add(timeoutInstruct, 1, 4);
+		gui.add(timeoutField, 2, 4);
 		////////////
 		// Add Log
-		this.log = new TextArea();
-		this.log.setEditable(false);
-		gui.add(log, 1, 3, 2, 1);
+		this.log = new LogView(LOG_LINES);
+		gui.add(log, 1, 5, 2, 1);
 		////////////
 		// Add confirm/exit button
 		VBox dialog = new VBox();
@@ -182,15 +512,57 @@ public class App extends Application
 		{
 			public void handle(ActionEvent arg0)
 			{
-				if(!outputField.getText().equals(""))
+				int threads = parsePositive(threadsField.getText());
+				String timeout = timeoutField.getText().trim();
+				int seconds = parseNonNegative(timeout);
+
+				if(files == null || files.isEmpty())
+				{
+					Alert alert = new Alert(AlertType.ERROR);
+					alert.setTitle("Error");
+					alert.setHeaderText("Missing Input Files");
+					alert.setContentText("Don't forget to browse to the OWL files to convert.");
+
+					alert.showAndWait();
+				}
+				else if(outputField.getText().equals(""))
+				{
+					Alert alert = new Alert(AlertType.ERROR);
+					alert.setTitle("Error");
+					alert.setHeaderText("Missing Output Directory");
+					alert.setContentText("Don't forget to browse to an output directory.");
+
+					alert.showAndWait();
+				}
+				else if(threads < 1)
+				{
+					Alert alert = new Alert(AlertType.ERROR);
+					alert.setTitle("Error");
+					alert.setHeaderText("Invalid Parallelism");
+					alert.setContentText("The number of parallel conversions must be a positive integer.");
+
+					alert.showAndWait();
+				}
+				else if(seconds < 0)
+				{
+					Alert alert = new Alert(AlertType.ERROR);
+					alert.setTitle("Error");
+					alert.setHeaderText("Invalid Time Limit");
+					alert.setContentText("The time limit must be a number of seconds, or 0 for none.");
+
+					alert.showAndWait();
+				}
+				else
 				{
+					parallelism = threads;
+					timeoutMillis = seconds * 1000L;
 					Task<Void> task = new Task<Void>()
 					{
 						@Override
 						protected Void call() throws Exception
 						{
 							convertFiles(files);
-							log.appendText("\nJob Completed!\n");
+							appendLog("\nJob Completed!\n");
 							return null;
 						}
 					};
@@ -198,15 +570,17 @@ public class App extends Application
 					(new Thread(task)).start();
 
 				}
-				else
-				{
-					Alert alert = new Alert(AlertType.ERROR);
-					alert.setTitle("Error");
-					alert.setHeaderText("Missing Output Directory");
-					alert.setContentText("Don't forget to browse to an output directory.");
-
-					alert.showAndWait();
-				}
+			}
+		});
+		Button cancelButton = new Button("Cancel");
+		cancelButton.setOnAction(new EventHandler<ActionEvent>()
+		{
+			public void handle(ActionEvent arg0)
+			{
+				// Running files stop at their next checkpoint, waiting ones
+				// do not start
+				batchCancellation.cancel();
+				appendLog("Cancelling...\n");
 			}
 		});
 		Button exitButton = new Button("Close");
@@ -214,13 +588,14 @@ public class App extends Application
 		{
 			public void handle(ActionEvent arg0)
 			{
+				log.close();
 				Platform.exit();
 				System.exit(0);
 			}
 		});
 
-		dialog.getChildren().addAll(convertButton, exitButton);
-		gui.add(dialog, 3, 3);
+		dialog.getChildren().addAll(convertButton, cancelButton, exitButton);
+		gui.add(dialog, 3, 5);
 
 		// Add padding to each cell in grid
 		gui.getChildren().forEach(c -> {
@@ -232,194 +607,945 @@ public class App extends Application
 		primaryStage.show();
 	}
 
+	/**
+	 * Converts the given files into the output directory, running up to
+	 * {@link #parallelism} conversions at once. A failure in one file does not
+	 * affect the others; a summary is logged once every file is done.
+	 * 
+	 * @param files
+	 */
 	public static void convertFiles(List<File> files)
 	{
+		convertInputs(InputFile.of(files), false);
+	}
 
+	/**
+	 * Converts the given inputs like {@link #convertFiles(List)}.
+	 * 
+	 * @param files
+	 * @param skipUpToDate
+	 *            whether to skip inputs whose output file is up to date
+	 */
+	public static void convertInputs(List<InputFile> files, boolean skipUpToDate)
+	{
+		// The renderer keeps no per-document state, so one instance is shared
 		MyLatexRenderer latex = new MyLatexRenderer();
+		latex.setParallel(parallelRender);
+		latex.setExpressionCacheSize(expressionCacheSize);
+
+		// One output target per batch, so its buffers are reused across files
+		OutputTarget target;
+		try
+		{
+			target = zipArchive != null ? OutputTarget.zip(outputDir.toPath().resolve(zipArchive).toFile())
+			        : OutputTarget.files(outputDir, gzipOutput);
+		}
+		catch(IOException e)
+		{
+			appendLog("Could not create output " + zipArchive + ": " + e.getMessage() + "\n");
+			return;
+		}
 
-		for(File file : files)
+		// Offline, imports are resolved through the catalog and parsed once per batch
+		ImportCache cache = null;
+		if(offline)
 		{
+			OntologyCatalog catalog = new OntologyCatalog();
 			try
 			{
-				// Load the Ontology
-				OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+				for(File location : catalogs)
+				{
+					catalog.add(location);
+				}
+			}
+			catch(IOException e)
+			{
+				appendLog(e.getMessage() + "\n");
+				closeTarget(target);
+				return;
+			}
+			appendLog("Offline: " + catalogs.size() + " catalog locations, " + catalog.size() + " catalog entries.\n");
+			cache = new ImportCache(catalog);
+		}
 
-				// Force silent import errors. (ESP wrt purl.org)
-				manager.setOntologyLoaderConfiguration(manager.getOntologyLoaderConfiguration()
-				        .setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT));
+		// Input hashes only help when there are output files to keep
+		Manifest manifest = null;
+		if(useManifest && zipArchive == null)
+		{
+			try
+			{
+				manifest = Manifest.load(outputDir);
+			}
+			catch(IOException e)
+			{
+				appendLog("Could not read manifest, converting without it: " + e.getMessage() + "\n");
+			}
+		}
+
+		// Fewer files run at once while their estimated heap need is too high
+		HeapScheduler scheduler = null;
+		if(heapBudget > 0)
+		{
+			HeapEstimator estimator;
+			try
+			{
+				estimator = HeapEstimator.load(outputDir);
+			}
+			catch(IOException e)
+			{
+				appendLog("Could not read learned heap estimates, using defaults: " + e.getMessage() + "\n");
+				estimator = HeapEstimator.defaults(outputDir);
+			}
+			scheduler = new HeapScheduler(heapBudget, estimator);
+			appendLog("Heap budget: " + (heapBudget >> 20) + " MB.\n");
+		}
+
+		ImportCache imports = cache;
+		Manifest hashes = manifest;
+		HeapScheduler admission = scheduler;
+		LongAdder skipped = new LongAdder();
+		ConversionReport report = new ConversionReport(parallelism, parallelRender);
+		report.setHeapBudget(scheduler != null ? heapBudget : -1);
+		Cancellation cancellation = Cancellation.create();
+		batchCancellation = cancellation;
+		List<ConversionStats> stats = new ArrayList<>();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, files.size())));
+		List<Future<Boolean>> results = new ArrayList<>();
+		for(InputFile file : files)
+		{
+			ConversionStats fileStats = new ConversionStats(file);
+			stats.add(fileStats);
+			results.add(pool.submit(() -> convertIfOutdated(latex, target, imports, file, skipUpToDate, hashes,
+			        skipped, fileStats, cancellation, admission)));
+		}
+		pool.shutdown();
+
+		try
+		{
+			awaitFiles(files, results, pool, skipped);
+		}
+		finally
+		{
+			closeTarget(target);
+			if(manifest != null)
+			{
+				saveManifest(manifest);
+			}
+			if(scheduler != null)
+			{
+				saveHeapEstimates(scheduler.getEstimator());
+			}
+			report.finish();
+			writeReport(report, stats);
+		}
+	}
 
-				// Load Ontology
-				IRI iri = IRI.create(file.toURI());
-				// Update Log
-				String updateMessage = "Start Processing: " + iri + "\n";
-				Platform.runLater(new Runnable()
+	private static void writeReport(ConversionReport report, List<ConversionStats> stats)
+	{
+		File file = reportFile != null ? reportFile : new File(outputDir, ConversionReport.FILE_NAME);
+		try
+		{
+			report.write(file, stats);
+			appendLog("Report: " + file + "\n");
+		}
+		catch(IOException e)
+		{
+			appendLog("Could not write report " + file + ": " + e.getMessage() + "\n");
+		}
+	}
+
+	/**
+	 * Converts an input unless its output is up to date: newer than the input,
+	 * or made from an input with the same hash according to the manifest.
+	 * 
+	 * @param manifest
+	 *            input hashes of the outputs, or null
+	 * @param skipped
+	 *            counts the inputs that were up to date
+	 * @param stats
+	 *            receives the measurements of the input
+	 * @param cancellation
+	 *            the batch's token
+	 * @param scheduler
+	 *            admits the conversion within the heap budget, or null
+	 * @return true if the input was converted or up to date
+	 */
+	private static boolean convertIfOutdated(MyLatexRenderer latex, OutputTarget target, ImportCache imports,
+	        InputFile input, boolean skipUpToDate, Manifest manifest, LongAdder skipped, ConversionStats stats,
+	        Cancellation cancellation, HeapScheduler scheduler)
+	{
+		if(cancellation.isCancelled())
+		{
+			stats.setStatus(ConversionStats.Status.CANCELLED);
+			return false;
+		}
+
+		String hash = null;
+		Path output = target.getPath(input.getOutputName());
+		try
+		{
+			// Zip entries are always written again
+			boolean exists = output != null && Files.exists(output);
+			if(skipUpToDate && exists
+			        && Files.getLastModifiedTime(output).toMillis() >= input.getFile().lastModified())
+			{
+				skipped.increment();
+				stats.setStatus(ConversionStats.Status.SKIPPED);
+				return true;
+			}
+
+			if(manifest != null)
+			{
+				hash = Manifest.hash(input.getFile());
+				if(skipUpToDate && exists && hash.equals(manifest.get(input.getOutputName())))
 				{
-					public void run()
-					{
-						log.appendText(updateMessage);
-					}
-				});
+					skipped.increment();
+					stats.setStatus(ConversionStats.Status.SKIPPED);
+					return true;
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			appendLog("IO Failure on " + input + ": " + e.getMessage() + "\n");
+			return false;
+		}
 
-				OWLOntology ontology = manager.loadOntologyFromOntologyDocument(iri);
+		HeapScheduler.Ticket ticket = null;
+		try
+		{
+			if(scheduler != null)
+			{
+				File file = input.getFile();
+				boolean streamed = streaming && StreamingRenderer.isFunctionalSyntax(file);
+				ticket = scheduler.admit(input, scheduler.getEstimator().estimate(file, streamed));
+				stats.setHeapEstimate(ticket.getEstimate());
+				stats.setMeasureLoadHeap(scheduler.shouldMeasure(ticket));
+			}
 
-				Platform.runLater(new Runnable()
+			// The batch may have been cancelled while waiting
+			if(cancellation.isCancelled())
+			{
+				stats.setStatus(ConversionStats.Status.CANCELLED);
+				return false;
+			}
+
+			if(!convertFile(latex, target, imports, input, stats, cancellation.withBudget(timeoutMillis)))
+				return false;
+		}
+		catch(IOException e)
+		{
+			appendLog("IO Failure on " + input + ": " + e.getMessage() + "\n");
+			return false;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			stats.setStatus(ConversionStats.Status.CANCELLED);
+			return false;
+		}
+		finally
+		{
+			if(ticket != null)
+			{
+				scheduler.release(ticket, stats.getLoadHeapBytes());
+			}
+		}
+
+		if(manifest != null)
+		{
+			manifest.put(input.getOutputName(), hash);
+		}
+		return true;
+	}
+
+	private static void saveManifest(Manifest manifest)
+	{
+		try
+		{
+			manifest.save();
+		}
+		catch(IOException e)
+		{
+			appendLog("Could not write manifest: " + e.getMessage() + "\n");
+		}
+	}
+
+	private static void saveHeapEstimates(HeapEstimator estimator)
+	{
+		try
+		{
+			estimator.save();
+		}
+		catch(IOException e)
+		{
+			appendLog("Could not write learned heap estimates: " + e.getMessage() + "\n");
+		}
+	}
+
+	/**
+	 * Converts the inputs, then converts each input again whenever it changes,
+	 * until interrupted. The JVM stays warm between changes, so a change
+	 * costs about as much as converting the single file in a batch.
+	 * 
+	 * @param sources
+	 *            the inputs' files, directories and patterns
+	 * @param inputs
+	 *            their current files
+	 */
+	private static void watchInputs(List<InputScanner.Source> sources, List<InputFile> inputs)
+	{
+		if(zipArchive != null)
+		{
+			appendLog("Watching is not supported with --zip, the archive would only hold the changed files.\n");
+			return;
+		}
+
+		// Watch before converting, so changes during the first batch are seen
+		try(InputWatcher watcher = new InputWatcher(sources, debounceMillis))
+		{
+			convertInputs(inputs, !force);
+			appendLog("Watching " + sources.size() + " inputs for changes.\n");
+
+			while(true)
+			{
+				List<InputFile> changed = watcher.take();
+				long start = System.nanoTime();
+				convertInputs(changed, !force);
+				long end = System.nanoTime();
+				appendLog("Updated " + changed.size() + " changed files in " + (end - start) / 1000000 + " ms, "
+				        + (end - watcher.getFirstChange()) / 1000000 + " ms after the first change.\n");
+			}
+		}
+		catch(IOException e)
+		{
+			appendLog("Could not watch inputs: " + e.getMessage() + "\n");
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			appendLog("Stopped watching.\n");
+		}
+	}
+
+	private static void closeTarget(OutputTarget target)
+	{
+		try
+		{
+			target.close();
+		}
+		catch(IOException e)
+		{
+			appendLog("Could not finish output: " + e.getMessage() + "\n");
+		}
+	}
+
+	/**
+	 * Creates a manager that skips imports it cannot load. With an import
+	 * cache the manager resolves imports only through the cache and its
+	 * catalog.
+	 * 
+	 * @param imports
+	 *            the offline batch's imports, or null to resolve imports as
+	 *            usual
+	 * @return the manager
+	 */
+	private static OWLOntologyManager createManager(ImportCache imports)
+	{
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+
+		// Force silent import errors. (ESP wrt purl.org)
+		manager.setOntologyLoaderConfiguration(manager.getOntologyLoaderConfiguration()
+		        .setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT));
+
+		if(imports != null)
+		{
+			imports.attach(manager);
+		}
+		return manager;
+	}
+
+	/**
+	 * Waits for the conversions of a batch and logs a summary.
+	 */
+	private static void awaitFiles(List<InputFile> files, List<Future<Boolean>> results, ExecutorService pool,
+	        LongAdder skipped)
+	{
+		// Wait for every file and collect the failures
+		List<InputFile> failed = new ArrayList<>();
+		for(int i = 0; i < files.size(); i++)
+		{
+			try
+			{
+				if(!results.get(i).get())
 				{
-					public void run()
-					{
-						log.appendText("\tLoaded.\n");
-					}
-				});
+					failed.add(files.get(i));
+				}
+			}
+			catch(ExecutionException e)
+			{
+				appendLog("Unexpected failure on " + files.get(i) + ": " + e.getCause() + "\n");
+				failed.add(files.get(i));
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				pool.shutdownNow();
+				appendLog("Interrupted.\n");
+				return;
+			}
+		}
 
-				try
+		// Summary
+		long upToDate = skipped.sum();
+		String summary = "Converted " + (files.size() - upToDate - failed.size()) + " of " + (files.size() - upToDate)
+		        + " files";
+		summary += failed.isEmpty() ? ".\n" : ", " + failed.size() + " failed:\n";
+		for(InputFile f : failed)
+		{
+			summary += "\t" + f + "\n";
+		}
+		if(upToDate > 0)
+		{
+			summary += "Skipped " + upToDate + " up-to-date files.\n";
+		}
+		if(renderCacheDir != null)
+		{
+			long hits = renderCacheHits.sumThenReset();
+			long lookups = hits + renderCacheMisses.sumThenReset();
+			summary += "Render cache: " + hits + " of " + lookups + " entity sections reused ("
+			        + (lookups == 0 ? 0 : 100 * hits / lookups) + "%).\n";
+		}
+		appendLog(summary);
+	}
+
+	/**
+	 * Loads, renders and post-processes a single file. Every failure is
+	 * reported here so that the remaining files of a batch are unaffected.
+	 * 
+	 * @param latex
+	 * @param target
+	 *            receives the document
+	 * @param imports
+	 *            the offline batch's catalog and imports, or null to resolve
+	 *            imports as usual
+	 * @param input
+	 * @param stats
+	 *            receives the timings and sizes of the conversion
+	 * @param cancellation
+	 *            the file's token, checked between phases, entities and lines
+	 * @return true if the file was converted
+	 */
+	private static boolean convertFile(MyLatexRenderer latex, OutputTarget target, ImportCache imports,
+	        InputFile input, ConversionStats stats, Cancellation cancellation)
+	{
+		File file = input.getFile();
+		String name = file.getName();
+		OWLOntologyManager manager = null;
+		RenderCache sections = null;
+		Path output = null;
+		Writer document = null;
+		DocumentParts parts = null;
+		boolean converted = false;
+		stats.startAllocation();
+
+		try
+		{
+			IRI iri = IRI.create(file.toURI());
+			// Update Log
+			appendLog("Start Processing: " + iri + "\n");
+
+			// Functional syntax can be rendered without loading it as a whole
+			boolean stream = streaming && StreamingRenderer.isFunctionalSyntax(file);
+			OWLOntology ontology = null;
+			if(stream)
+			{
+				appendLog("\t" + name + (partSize > 0 ? ": Streaming into a single file.\n" : ": Streaming.\n"));
+			}
+			else
+			{
+				if(streaming)
 				{
-					// Write to a Temporary File
-					Path p = Files.createTempFile("temp", "");
-					PrintWriter tpw = new PrintWriter(p.toFile());
-					latex.render(ontology, tpw);
-					tpw.close();
-
-					// Update Log
-					Platform.runLater(new Runnable()
-					{
-						public void run()
-						{
-							log.appendText("\tRendered.\n");
-						}
-					});
+					appendLog("\t" + name + ": Not functional syntax, loading it instead of streaming.\n");
+				}
+
+				// Load the Ontology into a manager of its own
+				manager = createManager(imports);
 
-					// Do post processing
-					Platform.runLater(new Runnable()
+				long heapBefore = stats.isMeasureLoadHeap() ? ConversionStats.liveHeap() : -1;
+				long loadStart = System.nanoTime();
+				ConversionEvents.Load event = ConversionEvents.ENABLED ? new ConversionEvents.Load() : null;
+				if(event != null)
+				{
+					event.begin();
+				}
+				try
+				{
+					ontology = manager.loadOntologyFromOntologyDocument(iri);
+				}
+				catch(OWLOntologyAlreadyExistsException | OWLOntologyDocumentAlreadyExistsException e)
+				{
+					// An import copied from the cache has the same ID or
+					// document. It is only this file if it was read from this
+					// file.
+					OWLOntologyManager loading = manager;
+					ontology = loading.ontologies().filter(o -> iri.equals(loading.getOntologyDocumentIRI(o)))
+					        .findFirst().orElse(null);
+					if(ontology == null)
 					{
-						public void run()
+						manager.clearOntologies();
+						manager = createManager(null);
+						if(imports != null)
 						{
-							log.appendText("\tStarted Post-processing.\n");
+							// Still offline, but without the cached copies
+							manager.getIRIMappers().set(imports.getCatalog());
 						}
-					});
-
-					// Write the ontology to LaTex conversion
-					// Prepare permanent output file
-					String outputfile = outputDir.getPath() + File.separatorChar + stripExt(file.getName()) + ".tex";
-					File ofile = new File(outputfile);
-					PrintWriter pw = new PrintWriter(ofile);
-					// Get a scanner to the temp file
-					Scanner reader = new Scanner(p.toFile());
-					while(reader.hasNextLine())
+						ontology = manager.loadOntologyFromOntologyDocument(iri);
+					}
+				}
+				if(imports != null)
+				{
+					imports.addImports(ontology);
+				}
+				stats.addNanos(ConversionStats.Phase.LOAD, System.nanoTime() - loadStart);
+				if(event != null)
+				{
+					event.end();
+					if(event.shouldCommit())
 					{
-						String line = reader.nextLine();
-						pw.println(splitLine(line));
+						event.file = file.getPath();
+						event.size = file.length();
+						event.axioms = ontology.getAxiomCount();
+						event.commit();
 					}
+				}
+				if(heapBefore >= 0)
+				{
+					// The ontology is still referenced, so it stays live
+					stats.setLoadHeapBytes(ConversionStats.liveHeap() - heapBefore);
+				}
 
-					// Clean up
-					pw.close();
-					reader.close();
+				appendLog("\t" + name + ": Loaded.\n");
+			}
+			cancellation.check();
 
-					Platform.runLater(new Runnable()
-					{
-						public void run()
-						{
-							log.appendText("\tFinished Post-processing.\n");
-						}
-					});
+			// Render straight into the output file, wrapping long lines on the
+			// way so the document is written exactly once. The time of each
+			// stage is the time in its writer minus that in the next one.
+			String outputName = input.getOutputName();
+			output = target.getPath(outputName);
+			document = target.open(outputName);
+			TimingWriter written = new TimingWriter(document);
+			TimingWriter wrapped = new TimingWriter(new LineWrappingWriter(written, cancellation));
+			PrintWriter pw = new PrintWriter(wrapped);
+			if(renderCacheDir != null && !stream)
+			{
+				sections = openRenderCache(outputName);
+			}
+			RenderContext context = latex.newContext(sections);
+			context.setCancellation(cancellation);
+			long renderStart = System.nanoTime();
+			try
+			{
+				if(stream)
+				{
+					new StreamingRenderer().render(file, pw, context);
+				}
+				else if(partSize > 0)
+				{
+					parts = new DocumentParts(target, outputName, cancellation);
+					latex.renderParts(ontology, pw, parts.getPartsDir(), partSize, parts, context);
 				}
-				catch(IOException e)
+				else
 				{
-					System.out.println("IO Failure.");
+					latex.render(ontology, pw, context);
 				}
+			}
+			finally
+			{
+				pw.close();
+			}
+			// Parts are written concurrently, so their times add up over threads
+			long wrappedNanos = wrapped.getNanos() + (parts != null ? parts.getWrappedNanos() : 0);
+			long writtenNanos = written.getNanos() + (parts != null ? parts.getWriteNanos() : 0);
+			stats.addNanos(ConversionStats.Phase.RENDER,
+			        Math.max(0, System.nanoTime() - renderStart - wrappedNanos));
+			stats.addNanos(ConversionStats.Phase.POST_PROCESS, wrappedNanos - writtenNanos);
+			stats.addNanos(ConversionStats.Phase.WRITE, writtenNanos);
+			stats.setCharsWritten(written.getChars() + (parts != null ? parts.getChars() : 0));
+			stats.setSections(context);
 
+			// PrintWriter swallows IO errors, so ask for them explicitly
+			if(pw.checkError())
+				throw new IOException("Could not write " + target.describe(outputName));
+
+			// The master last, so it never includes a missing part
+			if(parts != null)
+			{
+				parts.commit();
+			}
+			target.commit(document);
+			if(output != null)
+			{
+				stats.setBytesWritten(Files.size(output) + (parts != null ? parts.getBytes() : 0));
+			}
+
+			if(sections != null)
+			{
+				commitRenderCache(sections, name);
+			}
+
+			appendLog("\t" + name + ": Rendered and post-processed. Caches: " + context + "\n");
+			stats.setStatus(ConversionStats.Status.CONVERTED);
+			converted = true;
+			return true;
+		}
+		catch(ConversionCancelledException e)
+		{
+			appendLog("\t" + name + ": " + e.getMessage() + ", aborted.\n");
+			stats.setStatus(ConversionStats.Status.CANCELLED);
+		}
+		catch(IOException e)
+		{
+			appendLog("IO Failure on " + file + ": " + e.getMessage() + "\n");
+		}
+		catch(OWLOntologyCreationException e)
+		{
+			appendLog("Could not create ontology from: " + file + "\n");
+		}
+		catch(OWLRendererException e)
+		{
+			appendLog("Could not render ontology from " + file + "\n");
+		}
+		catch(RuntimeException e)
+		{
+			appendLog("Unexpected failure on " + file + ": " + e + "\n");
+		}
+		finally
+		{
+			stats.stopAllocation();
+			// Release an aborted file's ontology now rather than when the
+			// manager is collected
+			if(manager != null)
+			{
+				manager.clearOntologies();
+			}
+			if(sections != null)
+			{
+				closeRenderCache(sections);
 			}
-			catch(OWLOntologyCreationException e)
+			// A partial output must neither be archived nor look up to date on
+			// the next run
+			if(!converted && document != null)
 			{
-				System.out.println("Could not create ontology from: " + file);
+				discardPartialOutput(target, document, target.describe(input.getOutputName()));
 			}
-			catch(OWLRendererException e)
+			if(!converted && parts != null)
 			{
-				System.out.println("Could not render ontology from " + file);
+				discardPartialParts(parts);
 			}
 		}
 
+		return false;
+	}
+
+	private static void discardPartialParts(DocumentParts parts)
+	{
+		try
+		{
+			parts.discard();
+		}
+		catch(IOException e)
+		{
+			appendLog("Could not delete incomplete parts in " + parts.getPartsDir() + ": " + e.getMessage() + "\n");
+		}
+	}
+
+	private static void discardPartialOutput(OutputTarget target, Writer document, String description)
+	{
+		try
+		{
+			target.discard(document);
+		}
+		catch(IOException e)
+		{
+			appendLog("Could not delete incomplete " + description + ": " + e.getMessage() + "\n");
+		}
+	}
+
+	/**
+	 * Opens the render cache of a document. The document is converted without
+	 * a cache if that fails.
+	 * 
+	 * @param outputName
+	 * @return the cache, or null
+	 */
+	private static RenderCache openRenderCache(String outputName)
+	{
+		try
+		{
+			return RenderCache.open(renderCacheDir, outputName);
+		}
+		catch(IOException e)
+		{
+			appendLog("\t" + outputName + ": Render cache unavailable: " + e.getMessage() + "\n");
+			return null;
+		}
+	}
+
+	private static void commitRenderCache(RenderCache sections, String name)
+	{
+		renderCacheHits.add(sections.getHits());
+		renderCacheMisses.add(sections.getMisses());
+		try
+		{
+			sections.commit();
+		}
+		catch(IOException e)
+		{
+			appendLog("\t" + name + ": Could not update render cache: " + e.getMessage() + "\n");
+		}
+	}
+
+	private static void closeRenderCache(RenderCache sections)
+	{
+		try
+		{
+			sections.close();
+		}
+		catch(IOException e)
+		{
+			// Nothing was committed, the previous cache stays as it was
+		}
+	}
+
+	/**
+	 * Appends a message to the GUI log, or to the console when running
+	 * without the GUI. Safe to call from any thread.
+	 * 
+	 * @param message
+	 */
+	private static void appendLog(String message)
+	{
+		if(log == null)
+		{
+			System.out.print(message);
+			return;
+		}
+
+		// Shown with the next frame, so a busy batch does not flood the FX
+		// thread
+		log.append(message);
 	}
 
+	/** Line break and indentation inserted at each split point. */
+	private static final String SPLIT_BREAK = "\\\\&\\qquad\n";
+
 	public static String splitLine(String s)
+	{
+		if(getLineLength(s) <= 125)
+			return s;
+
+		StringBuilder construct = new StringBuilder(s.length() + 64);
+		try
+		{
+			splitLine(s, construct);
+		}
+		catch(IOException e)
+		{
+			// StringBuilder does not throw
+			throw new UncheckedIOException(e);
+		}
+		return construct.toString();
+	}
+
+	/**
+	 * Writes a line to the output, wrapped in a split environment if it is
+	 * too long to fit on the page.
+	 * 
+	 * @param s
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void splitLine(CharSequence s, Appendable out) throws IOException
 	{
 		if(getLineLength(s) > 125)
 		{
 			// Wrap in multiline environment
-			String construct = "\\begin{split}\n";
-			// Find a reasonable split point
-			construct += findSplit(s);
+			out.append("\\begin{split}\n");
+			// Find reasonable split points
+			findSplit(s, out);
 			// Exit multiline
-			construct += "\n\\end{split}";
-
-			s = construct;
+			out.append("\n\\end{split}");
+		}
+		else
+		{
+			out.append(s);
 		}
-
-		return s;
 	}
 
 	public static String findSplit(String s)
 	{
-		// Find a reasonable split point
-		String regex = ",|\\\\sqcap|\\\\sqcup";
-		Pattern p = Pattern.compile(regex);
-		Matcher m = p.matcher(s);
-		m.region(100, s.length());
-		String construct = "";
-		if(m.find())
+		StringBuilder construct = new StringBuilder(s.length() + 64);
+		try
 		{
-			construct += s.substring(0, m.start());
-			construct += "\\\\&\\qquad\n";
-			String sub = s.substring(m.start());
-			construct += (sub.length() > 125) ? findSplit(sub) : sub;
+			findSplit(s, construct);
 		}
-		else
+		catch(IOException e)
 		{
-			construct += s;
+			// StringBuilder does not throw
+			throw new UncheckedIOException(e);
 		}
-		return construct;
+		return construct.toString();
 	}
 
-	public static int getLineLength(String s)
+	/**
+	 * Writes a line to the output with a break before the first ',',
+	 * \sqcap or \sqcup at least 100 characters into the line, and again
+	 * after each break while more than 125 characters remain. The line is
+	 * scanned once, so this is linear in its length.
+	 * 
+	 * @param s
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void findSplit(CharSequence s, Appendable out) throws IOException
 	{
-		// A list of escaped symbol sequences
-		String[] symbols = { "\\\\sqcap", "\\\\sqcup", "\\\\lnot", "\\\\forall", "\\\\exists", "hasValue", "\\\\geq",
-		        "\\\\leq", ">", "<", "=", "&\\\\sqsubseteq", "&\\\\equiv", "&\\\\not\\\\equiv", "\\\\top", "\\\\bot",
-		        "\\\\circ", "\\^-" };
+		// Start of the part that has not been written yet
+		int start = 0;
+		int split;
+		while((split = nextSplit(s, start + 100)) >= 0)
+		{
+			out.append(s, start, split);
+			out.append(SPLIT_BREAK);
+			start = split;
 
-		// Replace all latex symbols
-		for(String sym : symbols)
+			if(s.length() - start <= 125)
+				break;
+		}
+		out.append(s, start, s.length());
+	}
+
+	/**
+	 * @param s
+	 * @param from
+	 * @return the first index at or after from where a ',', \sqcap or
+	 *         \sqcup starts, or -1
+	 */
+	private static int nextSplit(CharSequence s, int from)
+	{
+		for(int i = from; i < s.length(); i++)
 		{
-			s = s.replaceAll(sym, "1");
+			char c = s.charAt(i);
+			if(c == ',' || (c == '\\' && (startsWith(s, i, "\\sqcap") || startsWith(s, i, "\\sqcup"))))
+				return i;
 		}
-		// Replace quotes and carats and self sequence
-		s = s.replaceAll("``", "\"").replaceAll("\\\\\\^\\{\\}", "^").replaceAll("''", "\"")
-		        .replaceAll("\\\\textsf\\{Self\\}", "self");
-		// Extract contents of \text{.*} and replace with capture
-		String regex = "\\\\text\\{(.*?)\\}";
-		Pattern p = Pattern.compile(regex);
-		Matcher m = p.matcher(s);
-		ArrayList<String> matches = new ArrayList<>();
-		while(m.find())
+		return -1;
+	}
+
+	/**
+	 * LaTeX sequences emitted by {@link MyLatexObjectVisitor} that print as a
+	 * fixed number of characters, with their widths in {@link #TOKEN_WIDTHS}.
+	 */
+	private static final String[]	WIDTH_TOKENS	= { "\\sqcap", "\\sqcup", "\\lnot", "\\forall", "\\exists",
+	        "hasValue", "\\geq", "\\leq", "&\\sqsubseteq", "&\\equiv", "&\\not\\equiv", "\\top", "\\bot",
+	        "\\circ", "^-", "``", "\\^{}", "''", "\\textsf{Self}" };
+	private static final int[]		TOKEN_WIDTHS	= { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 4 };
+	private static final String		TEXT_OPEN		= "\\text{";
+
+	/**
+	 * Estimates the printed width of a rendered line in a single pass: symbol
+	 * commands count as one character, the contents of \text{...} count but
+	 * not the command around them, and backslashes are ignored.
+	 * 
+	 * @param s
+	 * @return the estimated width
+	 */
+	public static int getLineLength(CharSequence s)
+	{
+		int length = 0;
+		boolean inText = false;
+		int i = 0;
+		while(i < s.length())
 		{
-			matches.add(m.group(1));
+			char c = s.charAt(i);
+			int token = matchToken(s, i);
+			if(token >= 0)
+			{
+				length += TOKEN_WIDTHS[token];
+				i += WIDTH_TOKENS[token].length();
+			}
+			else if(c == '\\' && startsWith(s, i, TEXT_OPEN))
+			{
+				// Inside \text{...} a nested \text{ is just text
+				if(inText)
+					length += TEXT_OPEN.length() - 1;
+				inText = true;
+				i += TEXT_OPEN.length();
+			}
+			else
+			{
+				if(c == '}' && inText)
+					inText = false;
+				else if(c != '\\')
+					length++;
+				i++;
+			}
 		}
-		for(String r : matches)
+		// An unterminated \text{ is printed as is
+		if(inText)
+			length += TEXT_OPEN.length() - 1;
+
+		return length;
+	}
+
+	/**
+	 * @param s
+	 * @param i
+	 * @return the index of the {@link #WIDTH_TOKENS} entry starting at i, or -1
+	 */
+	private static int matchToken(CharSequence s, int i)
+	{
+		switch(s.charAt(i))
 		{
-			s = s.replaceFirst(regex, r);
+			case '\\':
+			case '&':
+			case 'h':
+			case '^':
+			case '`':
+			case '\'':
+				for(int t = 0; t < WIDTH_TOKENS.length; t++)
+				{
+					if(startsWith(s, i, WIDTH_TOKENS[t]))
+						return t;
+				}
+			default:
+				return -1;
 		}
-		// Finally strip all remaining backslashes
-		s = s.replace("\\", "");
+	}
 
-		return s.length();
+	private static boolean startsWith(CharSequence s, int i, String prefix)
+	{
+		if(i + prefix.length() > s.length())
+			return false;
+		for(int j = 0; j < prefix.length(); j++)
+		{
+			if(s.charAt(i + j) != prefix.charAt(j))
+				return false;
+		}
+		return true;
 	}
 
 	/**
-	 * Bad method simply strips off last four characters '.owl'
+	 * Strips the extension, if any, off the last segment of a '/'-separated
+	 * file name.
 	 * 
 	 * @param filename
-	 * @return
+	 * @return the name without extension
 	 */
 	public static String stripExt(String filename)
 	{
-		return filename.substring(0, filename.length() - 4);
+		int dot = filename.lastIndexOf('.');
+		return dot > filename.lastIndexOf('/') + 1 ? filename.substring(0, dot) : filename;
 	}
 }
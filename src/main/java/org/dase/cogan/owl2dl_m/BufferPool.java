@@ -0,0 +1,64 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pool of large direct byte buffers, so that the files of a batch reuse the
+ * same output buffers instead of allocating new ones per file. Safe for
+ * concurrent use.
+ */
+public class BufferPool
+{
+	/** Default size of a pooled buffer. */
+	public static final int						DEFAULT_BUFFER_SIZE	= 1 << 20;
+
+	private final int							bufferSize;
+	private final ConcurrentLinkedQueue<ByteBuffer>	free				= new ConcurrentLinkedQueue<>();
+
+	public BufferPool()
+	{
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param bufferSize
+	 *            size of each buffer in bytes
+	 */
+	public BufferPool(int bufferSize)
+	{
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * @return a cleared buffer, taken from the pool if one is free
+	 */
+	public ByteBuffer acquire()
+	{
+		ByteBuffer buffer = free.poll();
+		if(buffer == null)
+		{
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer to the pool. It must not be used afterwards.
+	 *
+	 * @param buffer
+	 */
+	public void release(ByteBuffer buffer)
+	{
+		free.offer(buffer);
+	}
+
+	/**
+	 * @return the size of each buffer in bytes
+	 */
+	public int getBufferSize()
+	{
+		return bufferSize;
+	}
+}
@@ -0,0 +1,107 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cooperative cancellation of a batch and of its files. The conversion checks
+ * its token between phases, between entities and between lines, and stops
+ * with a {@link ConversionCancelledException} once the token is cancelled or
+ * past its deadline. A file's token is derived from the batch's, so
+ * cancelling the batch stops every file. Safe for concurrent use.
+ * <p>
+ * OWLAPI offers no way to stop loading an ontology, so a load runs to its end
+ * and the token is checked right after it.
+ */
+public class Cancellation
+{
+	/** A token that is never cancelled; {@link #cancel()} does nothing on it. */
+	public static final Cancellation	NONE	= new Never();
+
+	private final Cancellation			parent;
+	/** {@link System#nanoTime()} at which the budget runs out. */
+	private final long					deadline;
+	private final long					budgetMillis;
+	private volatile boolean			cancelled;
+
+	private Cancellation(Cancellation parent, long deadline, long budgetMillis)
+	{
+		this.parent = parent;
+		this.deadline = deadline;
+		this.budgetMillis = budgetMillis;
+	}
+
+	/**
+	 * @return a token that is only cancelled by {@link #cancel()}
+	 */
+	public static Cancellation create()
+	{
+		return new Cancellation(null, Long.MAX_VALUE, 0);
+	}
+
+	/**
+	 * @param budgetMillis
+	 *            wall-clock time from now, or 0 for no limit
+	 * @return a token that is cancelled with this one or when the budget is
+	 *         used up
+	 */
+	public Cancellation withBudget(long budgetMillis)
+	{
+		long deadline = budgetMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis)
+		        : Long.MAX_VALUE;
+		return new Cancellation(this, deadline, budgetMillis);
+	}
+
+	/**
+	 * Cancels this token and every token derived from it.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	/**
+	 * @return whether the work should stop
+	 */
+	public boolean isCancelled()
+	{
+		return reason() != null;
+	}
+
+	/**
+	 * @throws ConversionCancelledException
+	 *             if the work should stop
+	 */
+	public void check()
+	{
+		String reason = reason();
+		if(reason != null)
+			throw new ConversionCancelledException(reason);
+	}
+
+	/**
+	 * @return why the work should stop, or null if it should go on
+	 */
+	private String reason()
+	{
+		if(cancelled)
+			return "Cancelled";
+		if(deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0)
+			return "Time budget of " + budgetMillis + " ms exceeded";
+		return parent != null ? parent.reason() : null;
+	}
+
+	/** The token behind {@link #NONE}. */
+	private static final class Never extends Cancellation
+	{
+		Never()
+		{
+			super(null, Long.MAX_VALUE, 0);
+		}
+
+		@Override
+		public void cancel()
+		{
+			// Shared by every caller without a token, so it stays uncancelled
+		}
+	}
+}
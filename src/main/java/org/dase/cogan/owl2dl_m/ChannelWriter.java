@@ -0,0 +1,198 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writer that encodes text as UTF-8 into a pooled byte buffer and writes the
+ * buffer to a channel only when it is full, so a document costs a handful of
+ * large writes instead of one per default sized buffer. The buffer goes back to
+ * the pool when the writer is closed, which also closes the channel.
+ */
+public class ChannelWriter extends Writer
+{
+	private static final int			CHAR_BUFFER_SIZE	= 8192;
+
+	private final WritableByteChannel	channel;
+	private final BufferPool			pool;
+	private final String				target;
+	private final CharsetEncoder		encoder;
+	private final CharBuffer			chars				= CharBuffer.allocate(CHAR_BUFFER_SIZE);
+	private ByteBuffer					bytes;
+
+	/**
+	 * @param channel
+	 *            receives the encoded text
+	 * @param pool
+	 *            provides the byte buffer
+	 */
+	public ChannelWriter(WritableByteChannel channel, BufferPool pool)
+	{
+		this(channel, pool, null);
+	}
+
+	/**
+	 * @param channel
+	 *            receives the encoded text
+	 * @param pool
+	 *            provides the byte buffer
+	 * @param target
+	 *            the file behind the channel, to record writes to it as
+	 *            {@link ConversionEvents.Write} events, or null
+	 */
+	public ChannelWriter(WritableByteChannel channel, BufferPool pool, String target)
+	{
+		this.channel = channel;
+		this.pool = pool;
+		this.target = target;
+		this.bytes = pool.acquire();
+		this.encoder = StandardCharsets.UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+		        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	@Override
+	public void write(int c) throws IOException
+	{
+		ensureOpen();
+		chars.put((char) c);
+		if(!chars.hasRemaining())
+		{
+			encode(false);
+		}
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException
+	{
+		ensureOpen();
+		while(len > 0)
+		{
+			int n = Math.min(len, chars.remaining());
+			chars.put(cbuf, off, n);
+			off += n;
+			len -= n;
+			if(!chars.hasRemaining())
+			{
+				encode(false);
+			}
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException
+	{
+		ensureOpen();
+		while(len > 0)
+		{
+			int n = Math.min(len, chars.remaining());
+			chars.put(str, off, off + n);
+			off += n;
+			len -= n;
+			if(!chars.hasRemaining())
+			{
+				encode(false);
+			}
+		}
+	}
+
+	/**
+	 * Encodes the pending text and writes it to the channel.
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		ensureOpen();
+		encode(false);
+		drain();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if(bytes == null)
+			return;
+
+		try
+		{
+			encode(true);
+			while(encoder.flush(bytes).isOverflow())
+			{
+				drain();
+			}
+			drain();
+		}
+		finally
+		{
+			pool.release(bytes);
+			bytes = null;
+			channel.close();
+		}
+	}
+
+	/**
+	 * Encodes the buffered chars. A trailing high surrogate stays buffered
+	 * until its low surrogate arrives, unless this is the end of input.
+	 */
+	private void encode(boolean endOfInput) throws IOException
+	{
+		chars.flip();
+		for(;;)
+		{
+			CoderResult result = encoder.encode(chars, bytes, endOfInput);
+			if(result.isOverflow())
+			{
+				drain();
+			}
+			else
+			{
+				if(result.isError())
+				{
+					result.throwException();
+				}
+				break;
+			}
+		}
+		chars.compact();
+	}
+
+	private void drain() throws IOException
+	{
+		ConversionEvents.Write event = target != null && ConversionEvents.ENABLED ? new ConversionEvents.Write()
+		        : null;
+		if(event != null)
+		{
+			event.begin();
+		}
+		bytes.flip();
+		int size = bytes.remaining();
+		while(bytes.hasRemaining())
+		{
+			channel.write(bytes);
+		}
+		bytes.clear();
+
+		if(event != null)
+		{
+			event.end();
+			if(event.shouldCommit())
+			{
+				event.target = target;
+				event.bytes = size;
+				event.commit();
+			}
+		}
+	}
+
+	private void ensureOpen() throws IOException
+	{
+		if(bytes == null)
+			throw new IOException("Writer closed");
+	}
+}
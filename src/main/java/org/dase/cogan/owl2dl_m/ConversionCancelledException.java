@@ -0,0 +1,19 @@
+package org.dase.cogan.owl2dl_m;
+
+/**
+ * Thrown at a cancellation checkpoint once a conversion was cancelled or ran
+ * out of time. See {@link Cancellation}.
+ */
+public class ConversionCancelledException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param message
+	 *            why the conversion stopped
+	 */
+	public ConversionCancelledException(String message)
+	{
+		super(message);
+	}
+}
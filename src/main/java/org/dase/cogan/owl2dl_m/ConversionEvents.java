@@ -0,0 +1,116 @@
+package org.dase.cogan.owl2dl_m;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events of the conversion pipeline. They are enabled by
+ * default in any recording, e.g. {@code java -XX:StartFlightRecording=...}, so
+ * a recording shows which files and entities take the time. When no recording
+ * is running an event costs a few field writes, as the JIT removes the rest.
+ * Fields are only filled in when {@link Event#shouldCommit()} is true.
+ * <p>
+ * JDK 8 before 8u262 has no Flight Recorder. Events are only created when
+ * {@link #ENABLED} is true, so their classes are never loaded without it and
+ * conversions run as usual. This class itself does not depend on
+ * {@code jdk.jfr}.
+ */
+public final class ConversionEvents
+{
+	/** Whether the JDK has Flight Recorder, i.e. whether events may be created. */
+	static final boolean		ENABLED		= isAvailable();
+
+	private static final String	CATEGORY	= "owl2dl-m";
+
+	private ConversionEvents()
+	{
+	}
+
+	private static boolean isAvailable()
+	{
+		try
+		{
+			Class.forName("jdk.jfr.Event");
+			return true;
+		}
+		catch(ClassNotFoundException | LinkageError e)
+		{
+			return false;
+		}
+	}
+
+	@Name("org.dase.cogan.owl2dl_m.Load")
+	@Label("Ontology Load")
+	@Category(CATEGORY)
+	@Description("Loading and parsing an input ontology with OWLAPI")
+	@StackTrace(false)
+	static final class Load extends Event
+	{
+		@Label("File")
+		String	file;
+
+		@Label("File Size")
+		@DataAmount
+		long	size;
+
+		@Label("Axioms")
+		long	axioms;
+	}
+
+	@Name("org.dase.cogan.owl2dl_m.EntitySection")
+	@Label("Entity Section")
+	@Category(CATEGORY)
+	@Description("Rendering the section of one entity, or copying it from the render cache")
+	@StackTrace(false)
+	static final class EntitySection extends Event
+	{
+		@Label("Entity IRI")
+		String	iri;
+
+		@Label("Entity Type")
+		String	entityType;
+
+		@Label("Axioms")
+		int		axioms;
+
+		@Label("Length")
+		@Description("Characters of LaTeX written; the same as bytes unless names are not ASCII")
+		long	chars;
+
+		@Label("From Render Cache")
+		boolean	cached;
+	}
+
+	@Name("org.dase.cogan.owl2dl_m.LineWrap")
+	@Label("Line Wrap")
+	@Category(CATEGORY)
+	@Description("Post-processing one line of output, splitting it if it is too long for the page")
+	@StackTrace(false)
+	@Threshold("20 us")
+	static final class LineWrap extends Event
+	{
+		@Label("Line Length")
+		int	chars;
+	}
+
+	@Name("org.dase.cogan.owl2dl_m.Write")
+	@Label("Output Write")
+	@Category(CATEGORY)
+	@Description("Writing encoded output to a file or zip archive")
+	@StackTrace(false)
+	static final class Write extends Event
+	{
+		@Label("Target")
+		String	target;
+
+		@Label("Bytes")
+		@DataAmount
+		long	bytes;
+	}
+}
@@ -0,0 +1,288 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Machine-readable summary of a batch: per document the time of each phase,
+ * the entities and axioms of each section, the characters and bytes written
+ * and the bytes allocated, plus totals and the peak heap use of the batch.
+ * Written as JSON, e.g.
+ *
+ * <pre>
+ * {"version": 1, "started": "...", "wallMillis": 1234.5, ..., "totals": {...},
+ *  "documents": [{"input": "a.owl", "output": "a", "status": "converted",
+ *  "loadMillis": 12.3, ..., "sections": {"classes": {"entities": 10, "axioms": 25}, ...}}]}
+ * </pre>
+ *
+ * Sizes and counts that could not be measured are -1 and left out of the
+ * totals.
+ */
+public class ConversionReport
+{
+	/** Version of the report layout, raised when fields change meaning. */
+	public static final int			VERSION			= 1;
+	/** File name of the report in the output directory. */
+	public static final String		FILE_NAME		= "owl2dl-m-report.json";
+	/** JSON names of the sections in {@link MyLatexRenderer#SECTION_HEADINGS}. */
+	static final String[]			SECTION_NAMES	= MyLatexRenderer.SECTION_NAMES;
+
+	private final Instant			started			= Instant.now();
+	private final long				startNanos		= System.nanoTime();
+	private final int				threads;
+	private final boolean			parallelRender;
+	private long					wallNanos;
+	private long					peakHeapBytes	= -1;
+	private long					heapBudget		= -1;
+
+	/**
+	 * Starts the report of a batch and the measurement of its peak heap use.
+	 *
+	 * @param threads
+	 *            number of files converted at once
+	 * @param parallelRender
+	 *            whether documents are rendered in parallel
+	 */
+	public ConversionReport(int threads, boolean parallelRender)
+	{
+		this.threads = threads;
+		this.parallelRender = parallelRender;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if(pool.getType() == MemoryType.HEAP)
+			{
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * @param heapBudget
+	 *            heap bytes the admitted conversions could need together
+	 */
+	public void setHeapBudget(long heapBudget)
+	{
+		this.heapBudget = heapBudget;
+	}
+
+	/**
+	 * Ends the measurement of the batch's duration and peak heap use. The peak
+	 * is the sum of the peaks of the heap pools, which may have been reached
+	 * at different times, so it is an upper bound.
+	 */
+	public void finish()
+	{
+		wallNanos = System.nanoTime() - startNanos;
+		long peak = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if(pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+			{
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		peakHeapBytes = peak;
+	}
+
+	/**
+	 * Writes the report, replacing an existing file in a single step.
+	 *
+	 * @param file
+	 * @param documents
+	 *            the measurements of every input of the batch
+	 * @throws IOException
+	 */
+	public void write(File file, List<ConversionStats> documents) throws IOException
+	{
+		Path path = file.toPath();
+		Path tmp = path.resolveSibling(path.getFileName() + ".new");
+		try(Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+		{
+			write(out, documents);
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @param out
+	 * @param documents
+	 *            the measurements of every input of the batch
+	 * @throws IOException
+	 */
+	public void write(Writer out, List<ConversionStats> documents) throws IOException
+	{
+		int[] statuses = new int[ConversionStats.Status.values().length];
+		long[] nanos = new long[ConversionStats.Phase.values().length];
+		long chars = 0;
+		long bytes = 0;
+		long allocated = 0;
+		long entities = 0;
+		long axioms = 0;
+		for(ConversionStats doc : documents)
+		{
+			statuses[doc.getStatus().ordinal()]++;
+			for(ConversionStats.Phase phase : ConversionStats.Phase.values())
+			{
+				nanos[phase.ordinal()] += doc.getNanos(phase);
+			}
+			chars += doc.getCharsWritten();
+			bytes = add(bytes, doc.getBytesWritten());
+			allocated = add(allocated, doc.getAllocatedBytes());
+			for(int i = 0; i < SECTION_NAMES.length; i++)
+			{
+				entities += doc.getSectionEntities(i);
+				axioms += doc.getSectionAxioms(i);
+			}
+		}
+
+		out.write("{\n");
+		field(out, "  ", "version", VERSION, true);
+		field(out, "  ", "started", string(started.toString()), true);
+		field(out, "  ", "wallMillis", millis(wallNanos), true);
+		field(out, "  ", "threads", threads, true);
+		field(out, "  ", "parallelRender", parallelRender, true);
+		field(out, "  ", "maxHeapBytes", Runtime.getRuntime().maxMemory(), true);
+		field(out, "  ", "peakHeapBytes", peakHeapBytes, true);
+		field(out, "  ", "heapBudgetBytes", heapBudget, true);
+		field(out, "  ", "files", documents.size(), true);
+		for(ConversionStats.Status status : ConversionStats.Status.values())
+		{
+			field(out, "  ", name(status), statuses[status.ordinal()], true);
+		}
+
+		out.write("  \"totals\": {\n");
+		for(ConversionStats.Phase phase : ConversionStats.Phase.values())
+		{
+			field(out, "    ", name(phase) + "Millis", millis(nanos[phase.ordinal()]), true);
+		}
+		field(out, "    ", "entities", entities, true);
+		field(out, "    ", "axioms", axioms, true);
+		field(out, "    ", "charsWritten", chars, true);
+		field(out, "    ", "bytesWritten", bytes, true);
+		field(out, "    ", "allocatedBytes", allocated, false);
+		out.write("  },\n");
+
+		out.write("  \"documents\": [");
+		for(int d = 0; d < documents.size(); d++)
+		{
+			ConversionStats doc = documents.get(d);
+			out.write(d == 0 ? "\n    {\n" : ",\n    {\n");
+			field(out, "      ", "input", string(doc.getInput().getFile().getPath()), true);
+			field(out, "      ", "output", string(doc.getInput().getOutputName()), true);
+			field(out, "      ", "status", string(name(doc.getStatus())), true);
+			for(ConversionStats.Phase phase : ConversionStats.Phase.values())
+			{
+				field(out, "      ", name(phase) + "Millis", millis(doc.getNanos(phase)), true);
+			}
+			field(out, "      ", "charsWritten", doc.getCharsWritten(), true);
+			field(out, "      ", "bytesWritten", doc.getBytesWritten(), true);
+			field(out, "      ", "allocatedBytes", doc.getAllocatedBytes(), true);
+			field(out, "      ", "heapEstimateBytes", doc.getHeapEstimate(), true);
+			field(out, "      ", "loadHeapBytes", doc.getLoadHeapBytes(), true);
+			out.write("      \"sections\": {");
+			for(int i = 0; i < SECTION_NAMES.length; i++)
+			{
+				out.write(i == 0 ? "\n" : ",\n");
+				out.write("        " + string(SECTION_NAMES[i]) + ": {\"entities\": " + doc.getSectionEntities(i)
+				        + ", \"axioms\": " + doc.getSectionAxioms(i) + "}");
+			}
+			out.write("\n      }\n    }");
+		}
+		out.write(documents.isEmpty() ? "]\n" : "\n  ]\n");
+		out.write("}\n");
+	}
+
+	/** Adds a measurement that is -1 if unknown, e.g. for skipped inputs. */
+	private static long add(long sum, long value)
+	{
+		return value < 0 ? sum : sum + value;
+	}
+
+	private static void field(Writer out, String indent, String name, Object value, boolean more)
+	        throws IOException
+	{
+		out.write(indent);
+		out.write(string(name));
+		out.write(": ");
+		out.write(String.valueOf(value));
+		out.write(more ? ",\n" : "\n");
+	}
+
+	private static String millis(long nanos)
+	{
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+	/**
+	 * @return the camel case JSON name of an enum constant
+	 */
+	private static String name(Enum<?> constant)
+	{
+		StringBuilder name = new StringBuilder();
+		boolean upper = false;
+		for(char c : constant.name().toCharArray())
+		{
+			if(c == '_')
+			{
+				upper = true;
+			}
+			else
+			{
+				name.append(upper ? c : Character.toLowerCase(c));
+				upper = false;
+			}
+		}
+		return name.toString();
+	}
+
+	/**
+	 * @return the string as a JSON string literal
+	 */
+	static String string(String s)
+	{
+		StringBuilder json = new StringBuilder(s.length() + 2).append('"');
+		for(int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			switch(c)
+			{
+				case '"':
+					json.append("\\\"");
+					break;
+				case '\\':
+					json.append("\\\\");
+					break;
+				case '\n':
+					json.append("\\n");
+					break;
+				case '\r':
+					json.append("\\r");
+					break;
+				case '\t':
+					json.append("\\t");
+					break;
+				default:
+					if(c < 0x20)
+					{
+						json.append(String.format("\\u%04x", (int) c));
+					}
+					else
+					{
+						json.append(c);
+					}
+			}
+		}
+		return json.append('"').toString();
+	}
+}
@@ -0,0 +1,376 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.semanticweb.owlapi.io.OWLRendererException;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Converts ontologies over HTTP, so that a pipeline pays JVM start-up, class
+ * loading and JIT warm-up once instead of once per document. Listens on the
+ * loopback interface only.
+ * <ul>
+ * <li>{@code POST /convert} with an ontology document in any syntax OWLAPI
+ * reads as the body answers with the LaTeX document, streamed while it is
+ * rendered.</li>
+ * <li>{@code GET /metrics} answers with counters and latency percentiles as
+ * JSON.</li>
+ * </ul>
+ * A fixed number of documents are converted at once and a fixed number wait
+ * for a worker. Further requests are shed with 503 right away instead of
+ * piling up. Handlers run on the server's dispatcher thread and only admit
+ * requests, so shedding stays cheap under load.
+ * <p>
+ * Once streaming has started the status cannot change, so a document that
+ * fails or runs out of time ends with a comment instead of
+ * {@code \end{document}}.
+ */
+public class ConversionServer
+{
+	/** Number of latest requests the latency percentiles are taken from. */
+	private static final int						LATENCY_SAMPLES	= 1024;
+	private static final int						BUFFER_SIZE		= 1 << 16;
+
+	private final HttpServer						server;
+	private final ExecutorService					workers;
+	private final int								threads;
+	private final int								queueLimit;
+	/** Permits for running and waiting requests. */
+	private final Semaphore							admission;
+	private final MyLatexRenderer					latex;
+	private final Supplier<OWLOntologyManager>		managers;
+	private final long								timeoutMillis;
+	private final long								startNanos		= System.nanoTime();
+	private final AtomicInteger						running			= new AtomicInteger();
+	private final LongAdder							accepted		= new LongAdder();
+	private final LongAdder							completed		= new LongAdder();
+	private final LongAdder							failed			= new LongAdder();
+	private final LongAdder							rejected		= new LongAdder();
+	private final LatencyWindow						latencies		= new LatencyWindow(LATENCY_SAMPLES);
+
+	/**
+	 * @param port
+	 *            port on the loopback interface, 0 for any free port
+	 * @param threads
+	 *            documents converted at once
+	 * @param queueLimit
+	 *            documents waiting for a worker before requests are shed
+	 * @param latex
+	 *            the renderer, shared by all requests
+	 * @param managers
+	 *            creates the manager of each request's ontology
+	 * @param timeoutMillis
+	 *            wall-clock budget of each request, 0 for none
+	 * @throws IOException
+	 *             if the port cannot be bound
+	 */
+	public ConversionServer(int port, int threads, int queueLimit, MyLatexRenderer latex,
+	        Supplier<OWLOntologyManager> managers, long timeoutMillis) throws IOException
+	{
+		this.threads = threads;
+		this.queueLimit = queueLimit;
+		this.admission = new Semaphore(threads + queueLimit);
+		this.latex = latex;
+		this.managers = managers;
+		this.timeoutMillis = timeoutMillis;
+		this.workers = Executors.newFixedThreadPool(threads);
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/convert", this::handleConvert);
+		server.createContext("/metrics", this::handleMetrics);
+	}
+
+	public void start()
+	{
+		server.start();
+	}
+
+	/**
+	 * @return the bound address, e.g. to learn the port chosen for 0
+	 */
+	public InetSocketAddress getAddress()
+	{
+		return server.getAddress();
+	}
+
+	/**
+	 * Stops accepting requests and waits for the running ones.
+	 *
+	 * @param delaySeconds
+	 *            longest wait for running requests
+	 */
+	public void stop(int delaySeconds)
+	{
+		server.stop(delaySeconds);
+		workers.shutdown();
+		try
+		{
+			workers.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Admits a conversion or sheds it. Runs on the dispatcher thread.
+	 */
+	private void handleConvert(HttpExchange exchange) throws IOException
+	{
+		if(!"POST".equals(exchange.getRequestMethod()))
+		{
+			respond(exchange, 405, "POST an ontology document to convert it.\n");
+			return;
+		}
+		if(!admission.tryAcquire())
+		{
+			rejected.increment();
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			respond(exchange, 503, "Busy, try again later.\n");
+			return;
+		}
+
+		long start = System.nanoTime();
+		try
+		{
+			workers.execute(() -> {
+				try
+				{
+					convert(exchange);
+				}
+				finally
+				{
+					latencies.add(System.nanoTime() - start);
+					admission.release();
+				}
+			});
+			accepted.increment();
+		}
+		catch(RejectedExecutionException e)
+		{
+			admission.release();
+			respond(exchange, 503, "Shutting down.\n");
+		}
+	}
+
+	/**
+	 * Loads the request's ontology and streams its LaTeX document back.
+	 */
+	private void convert(HttpExchange exchange)
+	{
+		running.incrementAndGet();
+		Cancellation cancellation = Cancellation.create().withBudget(timeoutMillis);
+		OWLOntologyManager manager = managers.get();
+		Writer client = null;
+		boolean converted = false;
+		try
+		{
+			OWLOntology ontology;
+			try(InputStream in = exchange.getRequestBody())
+			{
+				ontology = manager.loadOntologyFromOntologyDocument(in);
+			}
+			cancellation.check();
+
+			exchange.getResponseHeaders().set("Content-Type", "application/x-tex; charset=UTF-8");
+			exchange.sendResponseHeaders(200, 0);
+			client = new BufferedWriter(new ClientWriter(exchange.getResponseBody(), cancellation), BUFFER_SIZE);
+
+			// Only closed when complete, so a failure can still be appended
+			PrintWriter pw = new PrintWriter(new LineWrappingWriter(client, cancellation));
+			RenderContext context = latex.newContext();
+			context.setCancellation(cancellation);
+			latex.render(ontology, pw, context);
+			pw.close();
+			converted = !pw.checkError();
+		}
+		catch(OWLOntologyCreationException e)
+		{
+			fail(exchange, client, 400, "Could not read the ontology: " + e.getMessage());
+		}
+		catch(ConversionCancelledException e)
+		{
+			fail(exchange, client, 503, e.getMessage());
+		}
+		catch(IOException | OWLRendererException | RuntimeException e)
+		{
+			fail(exchange, client, 500, "Could not convert the ontology: " + e);
+		}
+		finally
+		{
+			manager.clearOntologies();
+			exchange.close();
+			running.decrementAndGet();
+			(converted ? completed : failed).increment();
+		}
+	}
+
+	/**
+	 * Reports a failure with a status, or with a comment at the end of a
+	 * document that is already streaming.
+	 * 
+	 * @param client
+	 *            the streaming document, or null if the status is not sent
+	 */
+	private static void fail(HttpExchange exchange, Writer client, int status, String message)
+	{
+		try
+		{
+			if(client == null)
+			{
+				respond(exchange, status, message + "\n");
+				return;
+			}
+
+			client.write("\n% Conversion aborted: " + message.replace('\n', ' ') + "\n");
+			client.close();
+		}
+		catch(IOException e)
+		{
+			// The client has gone
+		}
+	}
+
+	/**
+	 * Answers with the counters and latency percentiles. Runs on the
+	 * dispatcher thread.
+	 */
+	private void handleMetrics(HttpExchange exchange) throws IOException
+	{
+		long[] sorted = latencies.snapshot();
+		int admitted = threads + queueLimit - admission.availablePermits();
+		int busy = running.get();
+		Runtime runtime = Runtime.getRuntime();
+
+		StringBuilder json = new StringBuilder("{\n");
+		field(json, "  ", "uptimeSeconds", (System.nanoTime() - startNanos) / 1000000000L, true);
+		field(json, "  ", "threads", threads, true);
+		field(json, "  ", "queueLimit", queueLimit, true);
+		field(json, "  ", "running", busy, true);
+		field(json, "  ", "queued", Math.max(0, admitted - busy), true);
+		field(json, "  ", "accepted", accepted.sum(), true);
+		field(json, "  ", "completed", completed.sum(), true);
+		field(json, "  ", "failed", failed.sum(), true);
+		field(json, "  ", "rejected", rejected.sum(), true);
+		field(json, "  ", "heapUsedBytes", runtime.totalMemory() - runtime.freeMemory(), true);
+		field(json, "  ", "maxHeapBytes", runtime.maxMemory(), true);
+		json.append("  \"latencyMillis\": {\n");
+		field(json, "    ", "samples", sorted.length, true);
+		field(json, "    ", "p50", millis(LatencyWindow.percentile(sorted, 50)), true);
+		field(json, "    ", "p90", millis(LatencyWindow.percentile(sorted, 90)), true);
+		field(json, "    ", "p99", millis(LatencyWindow.percentile(sorted, 99)), true);
+		field(json, "    ", "max", millis(LatencyWindow.percentile(sorted, 100)), false);
+		json.append("  }\n}\n");
+
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(200, body.length);
+		try(OutputStream out = exchange.getResponseBody())
+		{
+			out.write(body);
+		}
+	}
+
+	private static void field(StringBuilder json, String indent, String name, Object value, boolean more)
+	{
+		json.append(indent).append(ConversionReport.string(name)).append(": ").append(value)
+		        .append(more ? ",\n" : "\n");
+	}
+
+	private static String millis(long nanos)
+	{
+		return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+	}
+
+	private static void respond(HttpExchange exchange, int status, String text) throws IOException
+	{
+		byte[] body = text.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try(OutputStream out = exchange.getResponseBody())
+		{
+			out.write(body);
+		}
+	}
+
+	/**
+	 * Writes to the client and cancels the conversion once the client has
+	 * gone, as the PrintWriter in front of it hides write errors.
+	 */
+	private static final class ClientWriter extends FilterWriter
+	{
+		private final Cancellation cancellation;
+
+		ClientWriter(OutputStream out, Cancellation cancellation)
+		{
+			super(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			this.cancellation = cancellation;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException
+		{
+			try
+			{
+				super.write(cbuf, off, len);
+			}
+			catch(IOException e)
+			{
+				cancellation.cancel();
+				throw e;
+			}
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException
+		{
+			try
+			{
+				super.write(str, off, len);
+			}
+			catch(IOException e)
+			{
+				cancellation.cancel();
+				throw e;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			try
+			{
+				super.flush();
+			}
+			catch(IOException e)
+			{
+				cancellation.cancel();
+				throw e;
+			}
+		}
+	}
+}
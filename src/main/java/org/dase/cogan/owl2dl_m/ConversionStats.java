@@ -0,0 +1,218 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measurements of the conversion of one input, filled in by the thread
+ * converting it and read once the batch is done.
+ */
+public class ConversionStats
+{
+	/** Outcome of a conversion. */
+	public enum Status
+	{
+		CONVERTED, SKIPPED, FAILED, CANCELLED
+	}
+
+	/** Stages of a conversion. */
+	public enum Phase
+	{
+		LOAD, RENDER, POST_PROCESS, WRITE
+	}
+
+	private static final ThreadMXBean	THREADS			= ManagementFactory.getThreadMXBean();
+
+	private final InputFile				input;
+	private Status						status			= Status.FAILED;
+	private final long[]				nanos			= new long[Phase.values().length];
+	private final long[]				sectionEntities	= new long[MyLatexRenderer.SECTION_HEADINGS.length];
+	private final long[]				sectionAxioms	= new long[MyLatexRenderer.SECTION_HEADINGS.length];
+	private long						charsWritten;
+	private long						bytesWritten	= -1;
+	private long						allocationStart	= -1;
+	private long						allocatedBytes	= -1;
+	private long						heapEstimate	= -1;
+	private boolean						measureLoadHeap;
+	private long						loadHeapBytes	= -1;
+
+	/**
+	 * @param input
+	 */
+	public ConversionStats(InputFile input)
+	{
+		this.input = input;
+	}
+
+	/**
+	 * Starts counting the bytes allocated by the current thread. Allocations
+	 * of helper threads, e.g. for parallel rendering, are not counted.
+	 */
+	public void startAllocation()
+	{
+		allocationStart = threadAllocatedBytes();
+	}
+
+	/**
+	 * Stops counting allocations; call on the thread that started.
+	 */
+	public void stopAllocation()
+	{
+		long end = threadAllocatedBytes();
+		if(allocationStart >= 0 && end >= 0)
+		{
+			allocatedBytes = end - allocationStart;
+		}
+	}
+
+	/**
+	 * @return the bytes allocated so far by the current thread, or -1 if the
+	 *         JVM does not measure that
+	 */
+	private static long threadAllocatedBytes()
+	{
+		if(THREADS instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+				return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * Runs a full garbage collection first, so it is only worth calling for
+	 * measurements that are used.
+	 *
+	 * @return the heap in use by reachable objects
+	 */
+	static long liveHeap()
+	{
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		memory.gc();
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+	public void addNanos(Phase phase, long time)
+	{
+		nanos[phase.ordinal()] += time;
+	}
+
+	public long getNanos(Phase phase)
+	{
+		return nanos[phase.ordinal()];
+	}
+
+	/**
+	 * Takes the entity and axiom counts of a rendered document.
+	 *
+	 * @param context
+	 */
+	public void setSections(RenderContext context)
+	{
+		for(int i = 0; i < sectionEntities.length; i++)
+		{
+			sectionEntities[i] = context.getSectionEntities(i);
+			sectionAxioms[i] = context.getSectionAxioms(i);
+		}
+	}
+
+	public long getSectionEntities(int section)
+	{
+		return sectionEntities[section];
+	}
+
+	public long getSectionAxioms(int section)
+	{
+		return sectionAxioms[section];
+	}
+
+	public InputFile getInput()
+	{
+		return input;
+	}
+
+	public Status getStatus()
+	{
+		return status;
+	}
+
+	public void setStatus(Status status)
+	{
+		this.status = status;
+	}
+
+	public long getCharsWritten()
+	{
+		return charsWritten;
+	}
+
+	public void setCharsWritten(long charsWritten)
+	{
+		this.charsWritten = charsWritten;
+	}
+
+	/**
+	 * @return the size of the output file, or -1 if unknown
+	 */
+	public long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+
+	public void setBytesWritten(long bytesWritten)
+	{
+		this.bytesWritten = bytesWritten;
+	}
+
+	/**
+	 * @return the bytes allocated by the converting thread, or -1 if unknown
+	 */
+	public long getAllocatedBytes()
+	{
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return the heap the scheduler expected the conversion to need, or -1 if
+	 *         there was no heap budget
+	 */
+	public long getHeapEstimate()
+	{
+		return heapEstimate;
+	}
+
+	public void setHeapEstimate(long heapEstimate)
+	{
+		this.heapEstimate = heapEstimate;
+	}
+
+	/**
+	 * @return whether to measure the heap the loaded ontology retains
+	 */
+	public boolean isMeasureLoadHeap()
+	{
+		return measureLoadHeap;
+	}
+
+	public void setMeasureLoadHeap(boolean measureLoadHeap)
+	{
+		this.measureLoadHeap = measureLoadHeap;
+	}
+
+	/**
+	 * @return the growth of the live heap, after full collections, from
+	 *         before to after loading the ontology, or -1 if it was not
+	 *         measured. Other conversions running at the time add to it.
+	 */
+	public long getLoadHeapBytes()
+	{
+		return loadHeapBytes;
+	}
+
+	public void setLoadHeapBytes(long loadHeapBytes)
+	{
+		this.loadHeapBytes = loadHeapBytes;
+	}
+}
@@ -0,0 +1,201 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The part files of one document written by
+ * {@link MyLatexRenderer#renderParts}. Each part goes through its own line
+ * wrapping into the output target, next to the master document, and its
+ * timings are summed over all parts. The parts are committed together, before
+ * the master, or discarded together if the document fails. Committing also
+ * deletes the parts an earlier run left behind, e.g. with a smaller part size.
+ * Safe for concurrent use.
+ */
+public class DocumentParts implements MyLatexRenderer.PartOpener
+{
+	private final OutputTarget				target;
+	/** Directory of the master document within the target, "" or ending in /. */
+	private final String					prefix;
+	private final String					partsDir;
+	private final Cancellation				cancellation;
+	private final Queue<TimingWriter>		written		= new ConcurrentLinkedQueue<>();
+	private final Queue<TimingWriter>		wrapped		= new ConcurrentLinkedQueue<>();
+	private final Queue<Writer>				documents	= new ConcurrentLinkedQueue<>();
+	private final Queue<Path>				paths		= new ConcurrentLinkedQueue<>();
+
+	/**
+	 * @param target
+	 *            receives the parts
+	 * @param outputName
+	 *            name of the master document
+	 * @param cancellation
+	 *            the document's token, checked per line
+	 */
+	public DocumentParts(OutputTarget target, String outputName, Cancellation cancellation)
+	{
+		int slash = outputName.lastIndexOf('/');
+		this.target = target;
+		this.prefix = outputName.substring(0, slash + 1);
+		this.partsDir = outputName.substring(slash + 1) + "-parts";
+		this.cancellation = cancellation;
+	}
+
+	/**
+	 * @return the directory of the parts relative to the master document
+	 */
+	public String getPartsDir()
+	{
+		return partsDir;
+	}
+
+	@Override
+	public Writer open(String part) throws IOException
+	{
+		String name = prefix + part;
+		Path path = target.getPath(name);
+		if(path != null)
+		{
+			paths.add(path);
+		}
+
+		Writer document = target.open(name);
+		documents.add(document);
+		TimingWriter partWritten = new TimingWriter(document);
+		TimingWriter partWrapped = new TimingWriter(new LineWrappingWriter(partWritten, cancellation));
+		written.add(partWritten);
+		wrapped.add(partWrapped);
+		return partWrapped;
+	}
+
+	/**
+	 * Commits every part once all of them are complete, then deletes the
+	 * other parts in the parts directory.
+	 *
+	 * @throws IOException
+	 */
+	public void commit() throws IOException
+	{
+		for(Writer document : documents)
+		{
+			target.commit(document);
+		}
+		deleteStaleParts();
+	}
+
+	/**
+	 * Deletes the part files that this document no longer includes. Only a
+	 * target with a file per document can have any.
+	 */
+	private void deleteStaleParts() throws IOException
+	{
+		Path probe = target.getPath(prefix + partsDir + "/part");
+		if(probe == null || !Files.isDirectory(probe.getParent()))
+			return;
+
+		// Temporary files of the target do not end in the extension
+		String extension = probe.getFileName().toString().substring("part".length());
+		Set<Path> current = new HashSet<>(paths);
+		try(DirectoryStream<Path> dir = Files.newDirectoryStream(probe.getParent(), "*" + extension))
+		{
+			for(Path path : dir)
+			{
+				if(!current.contains(path))
+				{
+					Files.deleteIfExists(path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discards every part opened so far, once none is written any more.
+	 *
+	 * @throws IOException
+	 *             the first failure; the other parts are discarded anyway
+	 */
+	public void discard() throws IOException
+	{
+		IOException failure = null;
+		for(Writer document : documents)
+		{
+			try
+			{
+				target.discard(document);
+			}
+			catch(IOException e)
+			{
+				if(failure == null)
+				{
+					failure = e;
+				}
+				else
+				{
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		if(failure != null)
+			throw failure;
+	}
+
+	/**
+	 * @return the time spent writing the encoded parts, summed over threads
+	 */
+	public long getWriteNanos()
+	{
+		long nanos = 0;
+		for(TimingWriter w : written)
+		{
+			nanos += w.getNanos();
+		}
+		return nanos;
+	}
+
+	/**
+	 * @return the time spent in line wrapping and writing, summed over threads
+	 */
+	public long getWrappedNanos()
+	{
+		long nanos = 0;
+		for(TimingWriter w : wrapped)
+		{
+			nanos += w.getNanos();
+		}
+		return nanos;
+	}
+
+	/**
+	 * @return the characters written to the parts after line wrapping
+	 */
+	public long getChars()
+	{
+		long chars = 0;
+		for(TimingWriter w : written)
+		{
+			chars += w.getChars();
+		}
+		return chars;
+	}
+
+	/**
+	 * @return the size of the part files
+	 * @throws IOException
+	 */
+	public long getBytes() throws IOException
+	{
+		long bytes = 0;
+		for(Path path : paths)
+		{
+			bytes += Files.size(path);
+		}
+		return bytes;
+	}
+}
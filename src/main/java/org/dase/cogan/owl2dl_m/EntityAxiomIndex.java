@@ -0,0 +1,319 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAsymmetricObjectPropertyAxiom;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLAxiomVisitor;
+import org.semanticweb.owlapi.model.OWLClassAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLDataPropertyAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLDataPropertyDomainAxiom;
+import org.semanticweb.owlapi.model.OWLDataPropertyRangeAxiom;
+import org.semanticweb.owlapi.model.OWLDatatypeDefinitionAxiom;
+import org.semanticweb.owlapi.model.OWLDifferentIndividualsAxiom;
+import org.semanticweb.owlapi.model.OWLDisjointClassesAxiom;
+import org.semanticweb.owlapi.model.OWLDisjointDataPropertiesAxiom;
+import org.semanticweb.owlapi.model.OWLDisjointObjectPropertiesAxiom;
+import org.semanticweb.owlapi.model.OWLDisjointUnionAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLEquivalentClassesAxiom;
+import org.semanticweb.owlapi.model.OWLEquivalentDataPropertiesAxiom;
+import org.semanticweb.owlapi.model.OWLEquivalentObjectPropertiesAxiom;
+import org.semanticweb.owlapi.model.OWLFunctionalDataPropertyAxiom;
+import org.semanticweb.owlapi.model.OWLFunctionalObjectPropertyAxiom;
+import org.semanticweb.owlapi.model.OWLInverseFunctionalObjectPropertyAxiom;
+import org.semanticweb.owlapi.model.OWLInverseObjectPropertiesAxiom;
+import org.semanticweb.owlapi.model.OWLIrreflexiveObjectPropertyAxiom;
+import org.semanticweb.owlapi.model.OWLNegativeDataPropertyAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLNegativeObjectPropertyAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLObjectPropertyAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLObjectPropertyDomainAxiom;
+import org.semanticweb.owlapi.model.OWLObjectPropertyRangeAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLReflexiveObjectPropertyAxiom;
+import org.semanticweb.owlapi.model.OWLSameIndividualAxiom;
+import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
+import org.semanticweb.owlapi.model.OWLSubDataPropertyOfAxiom;
+import org.semanticweb.owlapi.model.OWLSubObjectPropertyOfAxiom;
+import org.semanticweb.owlapi.model.OWLSymmetricObjectPropertyAxiom;
+import org.semanticweb.owlapi.model.OWLTransitiveObjectPropertyAxiom;
+
+/**
+ * The axioms that describe each entity of an ontology, grouped in a single
+ * pass over the ontology. An entity gets the same axioms as the matching
+ * {@code OWLOntology.axioms(...)} lookup (e.g. the SubClassOf axioms whose
+ * subclass is the entity, every EquivalentClasses axiom that contains it).
+ * <p>
+ * The axioms are read one {@link AxiomType} at a time in type index order, so
+ * each list is already bucketed by type in the order the renderer writes
+ * them. Once built the index is read-only and may be shared between threads.
+ */
+public class EntityAxiomIndex implements OWLAxiomVisitor
+{
+	private final Map<OWLEntity, List<OWLAxiom>> axiomsByEntity = new HashMap<>();
+
+	private EntityAxiomIndex()
+	{
+	}
+
+	/**
+	 * @param o
+	 *            the ontology, imports are not included
+	 * @return the index of the axioms of o
+	 */
+	public static EntityAxiomIndex build(OWLOntology o)
+	{
+		EntityAxiomIndex index = new EntityAxiomIndex();
+
+		List<AxiomType<?>> types = new ArrayList<>(AxiomType.AXIOM_TYPES);
+		types.sort(Comparator.comparingInt(AxiomType::getIndex));
+		for(AxiomType<?> type : types)
+		{
+			o.axioms(type).forEach(axiom -> axiom.accept(index));
+		}
+
+		return index;
+	}
+
+	/**
+	 * @param entity
+	 * @return the axioms describing the entity, ordered by axiom type
+	 */
+	public List<OWLAxiom> axioms(OWLEntity entity)
+	{
+		List<OWLAxiom> axioms = axiomsByEntity.get(entity);
+		return axioms == null ? Collections.emptyList() : Collections.unmodifiableList(axioms);
+	}
+
+	/**
+	 * @return the number of entities with at least one axiom
+	 */
+	public int size()
+	{
+		return axiomsByEntity.size();
+	}
+
+	/**
+	 * Records the axiom for the subject if the subject is a named entity.
+	 * Property expressions and anonymous individuals have no section of their
+	 * own and are skipped.
+	 */
+	private void add(OWLObject subject, OWLAxiom axiom)
+	{
+		if(subject instanceof OWLEntity)
+		{
+			// Most entities have only a few axioms
+			List<OWLAxiom> axioms = axiomsByEntity.computeIfAbsent((OWLEntity) subject, e -> new ArrayList<>(2));
+
+			// e.g. InverseObjectProperties(p p) names its subject twice
+			if(axioms.isEmpty() || axioms.get(axioms.size() - 1) != axiom)
+			{
+				axioms.add(axiom);
+			}
+		}
+	}
+
+	// Classes
+
+	@Override
+	public void visit(OWLSubClassOfAxiom axiom)
+	{
+		add(axiom.getSubClass(), axiom);
+	}
+
+	@Override
+	public void visit(OWLEquivalentClassesAxiom axiom)
+	{
+		axiom.classExpressions().forEach(ce -> add(ce, axiom));
+	}
+
+	@Override
+	public void visit(OWLDisjointClassesAxiom axiom)
+	{
+		axiom.classExpressions().forEach(ce -> add(ce, axiom));
+	}
+
+	@Override
+	public void visit(OWLDisjointUnionAxiom axiom)
+	{
+		add(axiom.getOWLClass(), axiom);
+	}
+
+	// Object properties
+
+	@Override
+	public void visit(OWLSubObjectPropertyOfAxiom axiom)
+	{
+		add(axiom.getSubProperty(), axiom);
+	}
+
+	@Override
+	public void visit(OWLEquivalentObjectPropertiesAxiom axiom)
+	{
+		axiom.properties().forEach(p -> add(p, axiom));
+	}
+
+	@Override
+	public void visit(OWLDisjointObjectPropertiesAxiom axiom)
+	{
+		axiom.properties().forEach(p -> add(p, axiom));
+	}
+
+	@Override
+	public void visit(OWLInverseObjectPropertiesAxiom axiom)
+	{
+		add(axiom.getFirstProperty(), axiom);
+		add(axiom.getSecondProperty(), axiom);
+	}
+
+	@Override
+	public void visit(OWLObjectPropertyDomainAxiom axiom)
+	{
+		add(axiom.getProperty(), axiom);
+	}
+
+	@Override
+	public void visit(OWLObjectPropertyRangeAxiom axiom)
+	{
+		add(axiom.getProperty(), axiom);
+	}
+
+	@Override
+	public void visit(OWLFunctionalObjectPropertyAxiom axiom)
+	{
+		add(axiom.getProperty(), axiom);
+	}
+
+	@Override
+	public void visit(OWLInverseFunctionalObjectPropertyAxiom axiom)
+	{
+		add(axiom.getProperty(), axiom);
+	}
+
+	@Override
+	public void visit(OWLSymmetricObjectPropertyAxiom axiom)
+	{
+		add(axiom.getProperty(), axiom);
+	}
+
+	@Override
+	public void visit(OWLAsymmetricObjectPropertyAxiom axiom)
+	{
+		add(axiom.getProperty(), axiom);
+	}
+
+	@Override
+	public void visit(OWLReflexiveObjectPropertyAxiom axiom)
+	{
+		add(axiom.getProperty(), axiom);
+	}
+
+	@Override
+	public void visit(OWLIrreflexiveObjectPropertyAxiom axiom)
+	{
+		add(axiom.getProperty(), axiom);
+	}
+
+	@Override
+	public void visit(OWLTransitiveObjectPropertyAxiom axiom)
+	{
+		add(axiom.getProperty(), axiom);
+	}
+
+	// Data properties
+
+	@Override
+	public void visit(OWLSubDataPropertyOfAxiom axiom)
+	{
+		add(axiom.getSubProperty(), axiom);
+	}
+
+	@Override
+	public void visit(OWLEquivalentDataPropertiesAxiom axiom)
+	{
+		axiom.properties().forEach(p -> add(p, axiom));
+	}
+
+	@Override
+	public void visit(OWLDisjointDataPropertiesAxiom axiom)
+	{
+		axiom.properties().forEach(p -> add(p, axiom));
+	}
+
+	@Override
+	public void visit(OWLDataPropertyDomainAxiom axiom)
+	{
+		add(axiom.getProperty(), axiom);
+	}
+
+	@Override
+	public void visit(OWLDataPropertyRangeAxiom axiom)
+	{
+		add(axiom.getProperty(), axiom);
+	}
+
+	@Override
+	public void visit(OWLFunctionalDataPropertyAxiom axiom)
+	{
+		add(axiom.getProperty(), axiom);
+	}
+
+	// Individuals
+
+	@Override
+	public void visit(OWLClassAssertionAxiom axiom)
+	{
+		add(axiom.getIndividual(), axiom);
+	}
+
+	@Override
+	public void visit(OWLObjectPropertyAssertionAxiom axiom)
+	{
+		add(axiom.getSubject(), axiom);
+	}
+
+	@Override
+	public void visit(OWLNegativeObjectPropertyAssertionAxiom axiom)
+	{
+		add(axiom.getSubject(), axiom);
+	}
+
+	@Override
+	public void visit(OWLDataPropertyAssertionAxiom axiom)
+	{
+		add(axiom.getSubject(), axiom);
+	}
+
+	@Override
+	public void visit(OWLNegativeDataPropertyAssertionAxiom axiom)
+	{
+		add(axiom.getSubject(), axiom);
+	}
+
+	@Override
+	public void visit(OWLSameIndividualAxiom axiom)
+	{
+		axiom.individuals().forEach(i -> add(i, axiom));
+	}
+
+	@Override
+	public void visit(OWLDifferentIndividualsAxiom axiom)
+	{
+		axiom.individuals().forEach(i -> add(i, axiom));
+	}
+
+	// Datatypes
+
+	@Override
+	public void visit(OWLDatatypeDefinitionAxiom axiom)
+	{
+		add(axiom.getDatatype(), axiom);
+	}
+}
@@ -0,0 +1,139 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.util.ShortFormProvider;
+
+/**
+ * Per-document cache of entity names, shared by {@link MyLatexRenderer} and
+ * its {@link MyLatexObjectVisitor}s. For each entity it keeps the short form,
+ * the escaped name used in section headings and the final LaTeX token written
+ * into axioms, so each of them is computed once per document.
+ * <p>
+ * The cache is safe for concurrent use. Once it holds about
+ * {@code maxEntries} entities, further names are computed on demand without
+ * being stored. The bound is approximate: threads that check the size at the
+ * same time may each add an entity, so the cache can exceed it by up to the
+ * number of rendering threads.
+ */
+public class EntityNameCache implements ShortFormProvider
+{
+	/** Default bound on the number of cached entities. */
+	public static final int							DEFAULT_MAX_ENTRIES	= 1 << 20;
+
+	private final ShortFormProvider					shortFormProvider;
+	private final int								maxEntries;
+	private final ConcurrentHashMap<OWLEntity, Names>	names				= new ConcurrentHashMap<>();
+	private final LongAdder							hits				= new LongAdder();
+	private final LongAdder							misses				= new LongAdder();
+
+	/**
+	 * @param shortFormProvider
+	 *            provides the names to cache
+	 */
+	public EntityNameCache(ShortFormProvider shortFormProvider)
+	{
+		this(shortFormProvider, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param shortFormProvider
+	 *            provides the names to cache
+	 * @param maxEntries
+	 *            approximate maximum number of cached entities
+	 */
+	public EntityNameCache(ShortFormProvider shortFormProvider, int maxEntries)
+	{
+		this.shortFormProvider = shortFormProvider;
+		this.maxEntries = maxEntries;
+	}
+
+	@Override
+	public String getShortForm(OWLEntity entity)
+	{
+		return names(entity).shortForm;
+	}
+
+	/**
+	 * @param entity
+	 * @return the short form with LaTeX special characters escaped
+	 */
+	public String getEscapedName(OWLEntity entity)
+	{
+		return names(entity).escaped;
+	}
+
+	/**
+	 * @param entity
+	 * @return the LaTeX written for the entity inside an axiom
+	 */
+	public String getToken(OWLEntity entity)
+	{
+		return names(entity).token;
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of lookups that had to compute the names
+	 */
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of cached entities
+	 */
+	public int size()
+	{
+		return names.size();
+	}
+
+	@Override
+	public String toString()
+	{
+		return getHits() + " hits, " + getMisses() + " misses, " + size() + " entities";
+	}
+
+	private Names names(OWLEntity entity)
+	{
+		Names n = names.get(entity);
+		if(n != null)
+		{
+			hits.increment();
+			return n;
+		}
+
+		misses.increment();
+		n = new Names(entity);
+		if(names.size() < maxEntries)
+		{
+			names.putIfAbsent(entity, n);
+		}
+		return n;
+	}
+
+	private final class Names
+	{
+		final String	shortForm;
+		final String	escaped;
+		final String	token;
+
+		Names(OWLEntity entity)
+		{
+			shortForm = shortFormProvider.getShortForm(entity);
+			escaped = LatexSink.escape(shortForm);
+			token = entity.isOWLClass() && escaped.equals("Thing") ? MyLatexObjectVisitor.TOP
+			        : "\\text{" + escaped + "}";
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * External sort of rendered axioms by the entity section they belong to. Up to
+ * {@code maxRunBytes} of records are sorted in memory; beyond that sorted runs
+ * are written to temporary files and merged, so heap usage does not depend on
+ * the size of the document. Closing the sorter deletes the run files.
+ */
+public class EntityRecordSorter implements Closeable
+{
+	private static final int	IO_BUFFER_SIZE	= 1 << 16;
+
+	/**
+	 * One line of an entity section, or with type -1 the marker that the
+	 * entity exists, carrying its escaped name.
+	 */
+	public static final class Record implements Comparable<Record>
+	{
+		/** Index into {@link MyLatexRenderer#SECTION_HEADINGS}. */
+		final int		section;
+		final String	key;
+		final String	iri;
+		final int		type;
+		final long		seq;
+		final String	text;
+
+		/**
+		 * @param section
+		 *            entity kind, in document order
+		 * @param key
+		 *            short form of the entity, the sort key
+		 * @param iri
+		 *            IRI of the entity, breaks ties between short forms
+		 * @param type
+		 *            axiom type index, -1 for the entity marker
+		 * @param seq
+		 *            input order of the axiom
+		 * @param text
+		 *            the rendered axiom, or the escaped name for a marker
+		 */
+		public Record(int section, String key, String iri, int type, long seq, String text)
+		{
+			this.section = section;
+			this.key = key;
+			this.iri = iri;
+			this.type = type;
+			this.seq = seq;
+			this.text = text;
+		}
+
+		/**
+		 * @param other
+		 * @return true if both records belong to the same entity section
+		 */
+		boolean sameEntity(Record other)
+		{
+			return section == other.section && key.equals(other.key) && iri.equals(other.iri);
+		}
+
+		@Override
+		public int compareTo(Record other)
+		{
+			int c = Integer.compare(section, other.section);
+			if(c == 0)
+				c = key.compareTo(other.key);
+			if(c == 0)
+				c = iri.compareTo(other.iri);
+			if(c == 0)
+				c = Integer.compare(type, other.type);
+			if(c == 0)
+				c = Long.compare(seq, other.seq);
+			return c;
+		}
+
+		/** Rough heap footprint, for deciding when to spill a run. */
+		long size()
+		{
+			return 64 + 2L * (key.length() + iri.length() + text.length());
+		}
+	}
+
+	private final long			maxRunBytes;
+	private final List<Record>	records	= new ArrayList<>();
+	private long				recordBytes;
+	private final List<Path>	runs	= new ArrayList<>();
+
+	/**
+	 * @param maxRunBytes
+	 *            approximate heap used for records before a run is spilled
+	 */
+	public EntityRecordSorter(long maxRunBytes)
+	{
+		this.maxRunBytes = maxRunBytes;
+	}
+
+	public void add(Record record) throws IOException
+	{
+		records.add(record);
+		recordBytes += record.size();
+		if(recordBytes >= maxRunBytes)
+		{
+			spill();
+		}
+	}
+
+	/**
+	 * @return the number of runs written to disk so far
+	 */
+	public int getRunCount()
+	{
+		return runs.size();
+	}
+
+	/**
+	 * Passes every record to the action in sorted order. Call once, after the
+	 * last {@link #add(Record)}.
+	 *
+	 * @param action
+	 * @throws IOException
+	 */
+	public void forEachSorted(Consumer<Record> action) throws IOException
+	{
+		if(runs.isEmpty())
+		{
+			Collections.sort(records);
+			records.forEach(action);
+			records.clear();
+			return;
+		}
+
+		if(!records.isEmpty())
+		{
+			spill();
+		}
+
+		List<RunReader> readers = new ArrayList<>();
+		try
+		{
+			PriorityQueue<RunReader> heads = new PriorityQueue<>(runs.size());
+			for(Path run : runs)
+			{
+				RunReader reader = new RunReader(run);
+				readers.add(reader);
+				if(reader.advance())
+				{
+					heads.add(reader);
+				}
+			}
+
+			while(!heads.isEmpty())
+			{
+				RunReader reader = heads.poll();
+				action.accept(reader.head);
+				if(reader.advance())
+				{
+					heads.add(reader);
+				}
+			}
+		}
+		finally
+		{
+			for(RunReader reader : readers)
+			{
+				reader.in.close();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		records.clear();
+		for(Path run : runs)
+		{
+			Files.deleteIfExists(run);
+		}
+		runs.clear();
+	}
+
+	private void spill() throws IOException
+	{
+		Collections.sort(records);
+		Path run = Files.createTempFile("owl2dl-m-run", ".bin");
+		runs.add(run);
+		try(DataOutputStream out = new DataOutputStream(
+		        new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER_SIZE)))
+		{
+			for(Record r : records)
+			{
+				out.writeInt(r.section);
+				writeString(out, r.key);
+				writeString(out, r.iri);
+				out.writeInt(r.type);
+				out.writeLong(r.seq);
+				writeString(out, r.text);
+			}
+		}
+		records.clear();
+		recordBytes = 0;
+	}
+
+	/** Unlike writeUTF, not limited to 64k bytes. */
+	private static void writeString(DataOutputStream out, String s) throws IOException
+	{
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** Reads one run, exposing its current record. */
+	private static final class RunReader implements Comparable<RunReader>
+	{
+		final DataInputStream	in;
+		Record					head;
+
+		RunReader(Path run) throws IOException
+		{
+			in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), IO_BUFFER_SIZE / 4));
+		}
+
+		boolean advance() throws IOException
+		{
+			int section;
+			try
+			{
+				section = in.readInt();
+			}
+			catch(EOFException e)
+			{
+				head = null;
+				return false;
+			}
+			head = new Record(section, readString(in), readString(in), in.readInt(), in.readLong(), readString(in));
+			return true;
+		}
+
+		@Override
+		public int compareTo(RunReader other)
+		{
+			return head.compareTo(other.head);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.semanticweb.owlapi.model.OWLClassExpression;
+
+/**
+ * Per-document cache of rendered anonymous class expressions, so that
+ * expressions repeated across axioms (e.g. the same existential restriction)
+ * are written from the cache instead of being visited again.
+ * <p>
+ * A fragment depends on the visitor's pretty print state, which is part of the
+ * key. It does not include the brackets {@code writeNested} puts around it:
+ * LatexBracketChecker decides those from the expression alone, so one
+ * fragment serves both nested and top level uses. Brackets inside the
+ * fragment belong to its sub-expressions and are fixed for the expression.
+ * <p>
+ * The cache is safe for concurrent use. It stops storing new fragments once it
+ * holds {@code maxEntries} fragments or {@code maxChars} characters.
+ */
+public class ExpressionCache
+{
+	private final int											maxEntries;
+	private final long											maxChars;
+	/** Fragments rendered without pretty printing. */
+	private final ConcurrentHashMap<OWLClassExpression, String>	plain		= new ConcurrentHashMap<>();
+	/** Fragments rendered with pretty printing. */
+	private final ConcurrentHashMap<OWLClassExpression, String>	pretty		= new ConcurrentHashMap<>();
+	private final AtomicLong									chars		= new AtomicLong();
+	private final LongAdder										hits		= new LongAdder();
+	private final LongAdder										misses		= new LongAdder();
+
+	/**
+	 * @param maxEntries
+	 *            maximum number of cached fragments
+	 * @param maxChars
+	 *            maximum total length of the cached fragments
+	 */
+	public ExpressionCache(int maxEntries, long maxChars)
+	{
+		this.maxEntries = maxEntries;
+		this.maxChars = maxChars;
+	}
+
+	/**
+	 * @param ce
+	 * @param prettyPrint
+	 *            pretty print state of the visitor
+	 * @return the cached fragment, or null
+	 */
+	public String get(OWLClassExpression ce, boolean prettyPrint)
+	{
+		String fragment = fragments(prettyPrint).get(ce);
+		if(fragment != null)
+		{
+			hits.increment();
+		}
+		else
+		{
+			misses.increment();
+		}
+		return fragment;
+	}
+
+	/**
+	 * Stores a fragment unless the cache is full.
+	 *
+	 * @param ce
+	 * @param prettyPrint
+	 *            pretty print state of the visitor
+	 * @param fragment
+	 *            the LaTeX written for ce
+	 */
+	public void put(OWLClassExpression ce, boolean prettyPrint, String fragment)
+	{
+		if(size() >= maxEntries || chars.get() + fragment.length() > maxChars)
+			return;
+
+		if(fragments(prettyPrint).putIfAbsent(ce, fragment) == null)
+		{
+			chars.addAndGet(fragment.length());
+		}
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of lookups that had to render the expression
+	 */
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of cached fragments
+	 */
+	public int size()
+	{
+		return plain.size() + pretty.size();
+	}
+
+	private ConcurrentHashMap<OWLClassExpression, String> fragments(boolean prettyPrint)
+	{
+		return prettyPrint ? pretty : plain;
+	}
+
+	@Override
+	public String toString()
+	{
+		return getHits() + " hits, " + getMisses() + " misses, " + size() + " expressions";
+	}
+}
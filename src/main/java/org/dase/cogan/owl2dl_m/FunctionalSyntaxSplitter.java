@@ -0,0 +1,284 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits an OWL functional syntax document into its prefix header and its
+ * axioms, one axiom at a time, without parsing them. Only parentheses, quoted
+ * strings, full IRIs and comments are recognised, which is enough to find where
+ * each top level item of {@code Ontology(...)} ends.
+ * <p>
+ * Import declarations and ontology annotations are skipped, so a header plus
+ * any subset of the axioms is again a complete document.
+ */
+public class FunctionalSyntaxSplitter implements Closeable
+{
+	private static final int	BUFFER_SIZE	= 1 << 16;
+
+	private final Reader		in;
+	private final char[]		buf			= new char[BUFFER_SIZE];
+	private int					pos;
+	private int					limit;
+
+	private final StringBuilder	header		= new StringBuilder();
+	private final StringBuilder	item		= new StringBuilder();
+	/** 0 before Ontology(, 1 inside it, more inside an item. */
+	private int					depth;
+
+	/**
+	 * Reads the document up to and including {@code Ontology(}.
+	 *
+	 * @param in
+	 *            the document
+	 * @throws IOException
+	 *             if the document has no Ontology(...) block
+	 */
+	public FunctionalSyntaxSplitter(Reader in) throws IOException
+	{
+		this.in = in;
+		readHeader();
+	}
+
+	/**
+	 * @return the text before {@code Ontology(}, i.e. the prefix declarations
+	 */
+	public String getHeader()
+	{
+		return header.toString();
+	}
+
+	/**
+	 * @return the next axiom, or null at the end of the ontology
+	 * @throws IOException
+	 */
+	public String next() throws IOException
+	{
+		for(int c = read(); c >= 0; c = read())
+		{
+			switch(c)
+			{
+				case '#':
+					skipComment();
+					item.append('\n');
+					break;
+				case '<':
+					item.append('<');
+					copyIRI(item);
+					break;
+				case '"':
+					item.append('"');
+					copyString(item);
+					break;
+				case '(':
+					if(depth == 1)
+					{
+						keepLastWord(item);
+					}
+					depth++;
+					item.append('(');
+					break;
+				case ')':
+					if(depth == 1)
+					{
+						// End of Ontology(...)
+						depth = 0;
+						return null;
+					}
+					depth--;
+					item.append(')');
+					if(depth == 1)
+					{
+						String axiom = item.toString();
+						item.setLength(0);
+						if(!axiom.startsWith("Import(") && !axiom.startsWith("Annotation("))
+							return axiom;
+					}
+					break;
+				default:
+					item.append((char) c);
+			}
+		}
+
+		if(depth > 0)
+			throw new IOException("Unexpected end of document");
+		return null;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+
+	/**
+	 * Tells whether a document looks like functional syntax, i.e. starts with
+	 * a Prefix or Ontology declaration after any comments and blank lines.
+	 *
+	 * @param in
+	 *            the beginning of the document
+	 * @return true if it is functional syntax
+	 * @throws IOException
+	 */
+	public static boolean isFunctionalSyntax(Reader in) throws IOException
+	{
+		boolean comment = false;
+		StringBuilder word = new StringBuilder();
+		for(int c = in.read(); c >= 0 && word.length() < 16; c = in.read())
+		{
+			if(comment)
+			{
+				comment = c != '\n' && c != '\r';
+			}
+			else if(c == '#' && word.length() == 0)
+			{
+				comment = true;
+			}
+			else if(c == '(' || Character.isWhitespace(c))
+			{
+				if(word.length() > 0)
+					break;
+			}
+			else
+			{
+				word.append((char) c);
+			}
+		}
+		return word.toString().equals("Prefix") || word.toString().equals("Ontology");
+	}
+
+	private void readHeader() throws IOException
+	{
+		for(int c = read(); c >= 0; c = read())
+		{
+			switch(c)
+			{
+				case '#':
+					skipComment();
+					header.append('\n');
+					break;
+				case '<':
+					header.append('<');
+					copyIRI(header);
+					break;
+				case '"':
+					header.append('"');
+					copyString(header);
+					break;
+				case '(':
+					if(depth == 0 && endsWithWord(header, "Ontology"))
+					{
+						header.setLength(header.length() - "Ontology".length());
+						depth = 1;
+						return;
+					}
+					depth++;
+					header.append('(');
+					break;
+				case ')':
+					depth--;
+					header.append(')');
+					break;
+				default:
+					header.append((char) c);
+			}
+		}
+		throw new IOException("No Ontology(...) found");
+	}
+
+	/**
+	 * Copies the rest of a full IRI, up to and including the closing '>'.
+	 */
+	private void copyIRI(StringBuilder target) throws IOException
+	{
+		for(int c = read(); c >= 0; c = read())
+		{
+			target.append((char) c);
+			if(c == '>')
+				return;
+		}
+	}
+
+	/**
+	 * Copies the rest of a quoted string, up to and including the closing
+	 * quote.
+	 */
+	private void copyString(StringBuilder target) throws IOException
+	{
+		for(int c = read(); c >= 0; c = read())
+		{
+			target.append((char) c);
+			if(c == '\\')
+			{
+				c = read();
+				if(c < 0)
+					return;
+				target.append((char) c);
+			}
+			else if(c == '"')
+			{
+				return;
+			}
+		}
+	}
+
+	private void skipComment() throws IOException
+	{
+		for(int c = read(); c >= 0 && c != '\n' && c != '\r'; c = read())
+		{
+		}
+	}
+
+	/**
+	 * Drops everything but the last word, i.e. the name of the item being
+	 * opened. This discards the ontology IRI and the whitespace between items.
+	 */
+	private static void keepLastWord(StringBuilder sb)
+	{
+		int end = sb.length();
+		while(end > 0 && Character.isWhitespace(sb.charAt(end - 1)))
+		{
+			end--;
+		}
+		int start = end;
+		while(start > 0 && !Character.isWhitespace(sb.charAt(start - 1)))
+		{
+			start--;
+		}
+		sb.setLength(end);
+		sb.delete(0, start);
+	}
+
+	private static boolean endsWithWord(StringBuilder sb, String word)
+	{
+		int end = sb.length();
+		while(end > 0 && Character.isWhitespace(sb.charAt(end - 1)))
+		{
+			end--;
+		}
+		int start = end - word.length();
+		if(start < 0 || !sb.substring(start, end).equals(word))
+			return false;
+		if(start > 0 && !Character.isWhitespace(sb.charAt(start - 1)) && sb.charAt(start - 1) != ')')
+			return false;
+
+		sb.setLength(end);
+		return true;
+	}
+
+	private int read() throws IOException
+	{
+		if(pos == limit)
+		{
+			limit = in.read(buf, 0, buf.length);
+			pos = 0;
+			if(limit <= 0)
+			{
+				limit = 0;
+				return -1;
+			}
+		}
+		return buf[pos++];
+	}
+}
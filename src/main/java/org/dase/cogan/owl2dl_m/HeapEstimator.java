@@ -0,0 +1,202 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates the heap a conversion needs from the size and format of its input.
+ * Each format, told apart by file extension, has a ratio of heap bytes per
+ * input byte. It starts from a rough figure for OWLAPI and moves towards the
+ * measured ratio of every conversion that ran alone, as an exponential moving
+ * average. The learned ratios are kept as one "format TAB ratio" line per
+ * format in the output directory. Safe for concurrent use.
+ */
+public class HeapEstimator
+{
+	/** File name of the learned ratios in the output directory. */
+	public static final String					FILE_NAME		= ".owl2dl-m-heap";
+	/** Heap of a conversion besides the ontology: renderer, caches, buffers. */
+	public static final long					BASE_BYTES		= 16L << 20;
+
+	/** Weight of a new measurement in the moving average. */
+	private static final double					ALPHA			= 0.3;
+	/** Smallest input to learn from; below it, garbage collection dominates. */
+	private static final long					MIN_LEARN_SIZE	= 1L << 20;
+	/**
+	 * Smallest plausible ratio. An ontology takes more heap than its document,
+	 * so a smaller measurement went wrong.
+	 */
+	private static final double					MIN_RATIO		= 1;
+	private static final double					DEFAULT_RATIO	= 12;
+	private static final Map<String, Double>	DEFAULT_RATIOS	= new HashMap<>();
+	static
+	{
+		// RDF syntaxes build a triple graph before the axioms
+		DEFAULT_RATIOS.put("rdf", 16.0);
+		DEFAULT_RATIOS.put("owl", 16.0);
+		DEFAULT_RATIOS.put("ttl", 20.0);
+		DEFAULT_RATIOS.put("nt", 10.0);
+		DEFAULT_RATIOS.put("owx", 10.0);
+		DEFAULT_RATIOS.put("ofn", 8.0);
+		DEFAULT_RATIOS.put("omn", 10.0);
+		DEFAULT_RATIOS.put("obo", 12.0);
+	}
+
+	private final Path							path;
+	private final Map<String, Double>			ratios			= new ConcurrentHashMap<>();
+
+	HeapEstimator(Path path)
+	{
+		this.path = path;
+	}
+
+	/**
+	 * @param outputDir
+	 * @return an estimator with the default ratios, which replaces the learned
+	 *         ones when saved
+	 */
+	public static HeapEstimator defaults(File outputDir)
+	{
+		return new HeapEstimator(outputDir.toPath().resolve(FILE_NAME));
+	}
+
+	/**
+	 * Loads the learned ratios of an output directory. Formats without one use
+	 * the default ratio.
+	 *
+	 * @param outputDir
+	 * @return the estimator
+	 * @throws IOException
+	 */
+	public static HeapEstimator load(File outputDir) throws IOException
+	{
+		HeapEstimator estimator = defaults(outputDir);
+		try(BufferedReader in = Files.newBufferedReader(estimator.path, StandardCharsets.UTF_8))
+		{
+			for(String line = in.readLine(); line != null; line = in.readLine())
+			{
+				int tab = line.indexOf('\t');
+				try
+				{
+					double ratio = Double.parseDouble(line.substring(tab + 1));
+					if(tab > 0 && ratio > 0)
+					{
+						estimator.ratios.put(line.substring(0, tab), ratio);
+					}
+				}
+				catch(NumberFormatException e)
+				{
+					// Keep the default of a damaged line
+				}
+			}
+		}
+		catch(NoSuchFileException e)
+		{
+			// First run
+		}
+		return estimator;
+	}
+
+	/**
+	 * @param file
+	 * @param streamed
+	 *            whether the file is rendered without loading it
+	 * @return the estimated heap bytes of converting the file
+	 */
+	public long estimate(File file, boolean streamed)
+	{
+		if(streamed)
+			return BASE_BYTES;
+		return BASE_BYTES + (long) (file.length() * getRatio(format(file)));
+	}
+
+	/**
+	 * @param file
+	 * @return whether {@link #learn} takes the file into account, so that its
+	 *         heap is worth measuring
+	 */
+	public boolean learnsFrom(File file)
+	{
+		return file.length() >= MIN_LEARN_SIZE;
+	}
+
+	/**
+	 * Takes the heap a file's ontology was measured to need into account.
+	 * Implausibly small measurements are ignored.
+	 *
+	 * @param file
+	 * @param heapBytes
+	 *            growth of the live heap while loading the file
+	 */
+	public void learn(File file, long heapBytes)
+	{
+		long size = file.length();
+		if(size < MIN_LEARN_SIZE || heapBytes < size * MIN_RATIO)
+			return;
+
+		double measured = (double) heapBytes / size;
+		ratios.compute(format(file), (format, ratio) -> {
+			double old = ratio != null ? ratio : getRatio(format);
+			return old + ALPHA * (measured - old);
+		});
+	}
+
+	/**
+	 * @param format
+	 *            a lower case file extension
+	 * @return the heap bytes per input byte of the format
+	 */
+	public double getRatio(String format)
+	{
+		Double ratio = ratios.get(format);
+		if(ratio == null)
+		{
+			ratio = DEFAULT_RATIOS.get(format);
+		}
+		return ratio != null ? ratio : DEFAULT_RATIO;
+	}
+
+	/**
+	 * Writes the learned ratios, replacing the previous ones in a single step.
+	 *
+	 * @throws IOException
+	 */
+	public void save() throws IOException
+	{
+		Path tmp = path.resolveSibling(FILE_NAME + ".new");
+		try(BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+		{
+			for(Map.Entry<String, Double> entry : new TreeMap<>(ratios).entrySet())
+			{
+				out.write(entry.getKey());
+				out.write('\t');
+				out.write(String.format(Locale.ROOT, "%.3f", entry.getValue()));
+				out.write('\n');
+			}
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @param file
+	 * @return the lower case extension of the file, or "" if it has none
+	 */
+	static String format(File file)
+	{
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,144 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Admits conversions while the sum of their estimated heap needs fits a
+ * budget, so that many small files are converted side by side while a large
+ * one is converted alone. Files are admitted in the order they ask, so a large
+ * file is not overtaken forever by small ones. A file that needs more than the
+ * whole budget is admitted once nothing else runs. Safe for concurrent use.
+ * <p>
+ * The budget covers the ontologies, not the parsers' temporary objects, so it
+ * should stay well below the maximum heap.
+ */
+public class HeapScheduler
+{
+	/** Admission of one file, handed back by {@link HeapScheduler#release}. */
+	public static final class Ticket
+	{
+		private final InputFile	input;
+		private final long		estimate;
+		private final long		need;
+		/** Whether no other file ran at any time since admission. */
+		private boolean			alone;
+
+		private Ticket(InputFile input, long estimate, long budget)
+		{
+			this.input = input;
+			this.estimate = estimate;
+			this.need = Math.min(estimate, budget);
+		}
+
+		public long getEstimate()
+		{
+			return estimate;
+		}
+	}
+
+	private final long			budget;
+	private final HeapEstimator	estimator;
+	private final Deque<Ticket>	waiting	= new ArrayDeque<>();
+	private final List<Ticket>	running	= new ArrayList<>();
+	private long				admitted;
+
+	/**
+	 * @param budget
+	 *            heap bytes that the admitted conversions may need together
+	 * @param estimator
+	 *            estimates each file's need and learns from the conversions
+	 */
+	public HeapScheduler(long budget, HeapEstimator estimator)
+	{
+		this.budget = budget;
+		this.estimator = estimator;
+	}
+
+	public long getBudget()
+	{
+		return budget;
+	}
+
+	public HeapEstimator getEstimator()
+	{
+		return estimator;
+	}
+
+	/**
+	 * Waits until the file fits the budget next to the files that run.
+	 *
+	 * @param input
+	 * @param estimate
+	 *            the file's estimated need in bytes
+	 * @return the ticket to release once the file is done
+	 * @throws InterruptedException
+	 */
+	public synchronized Ticket admit(InputFile input, long estimate) throws InterruptedException
+	{
+		Ticket ticket = new Ticket(input, estimate, budget);
+		waiting.add(ticket);
+		try
+		{
+			while(waiting.peek() != ticket || !running.isEmpty() && admitted + ticket.need > budget)
+			{
+				wait();
+			}
+		}
+		catch(InterruptedException e)
+		{
+			waiting.remove(ticket);
+			notifyAll();
+			throw e;
+		}
+		waiting.remove();
+
+		ticket.alone = running.isEmpty();
+		for(Ticket other : running)
+		{
+			other.alone = false;
+		}
+		running.add(ticket);
+		admitted += ticket.need;
+
+		// The next file may fit as well
+		notifyAll();
+		return ticket;
+	}
+
+	/**
+	 * Measuring the heap of a conversion takes two full garbage collections,
+	 * so it is only done for files that run alone and that the estimator
+	 * learns from.
+	 *
+	 * @param ticket
+	 * @return whether to measure the heap of the admitted file
+	 */
+	public synchronized boolean shouldMeasure(Ticket ticket)
+	{
+		return ticket.alone && estimator.learnsFrom(ticket.input.getFile());
+	}
+
+	/**
+	 * Ends an admission and, if the file ran alone, learns from its heap use.
+	 *
+	 * @param ticket
+	 * @param loadHeapBytes
+	 *            growth of the live heap while loading the file, or -1 if
+	 *            unknown
+	 */
+	public synchronized void release(Ticket ticket, long loadHeapBytes)
+	{
+		if(!running.remove(ticket))
+			return;
+
+		admitted -= ticket.need;
+		if(ticket.alone && loadHeapBytes >= 0)
+		{
+			estimator.learn(ticket.input.getFile(), loadHeapBytes);
+		}
+		notifyAll();
+	}
+}
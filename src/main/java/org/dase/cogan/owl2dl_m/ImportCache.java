@@ -0,0 +1,140 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyIRIMapper;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.parameters.OntologyCopy;
+
+/**
+ * Imports loaded during an offline batch, so that an ontology imported by many
+ * inputs is parsed only once. Every input is loaded into a manager of its own
+ * that resolves imports through {@link #attach(OWLOntologyManager)}: an import
+ * that is cached is copied into the manager when the input asks for it, and
+ * anything else is resolved through the shared {@link OntologyCatalog}. An
+ * ontology belongs to a single manager in OWLAPI, so the cached instances
+ * cannot be shared, but the copies share their immutable axioms and only the
+ * imports an input actually has are copied. Inputs never share a manager, so
+ * they are loaded in parallel and two inputs with the same ontology IRI keep
+ * their own content. Safe for concurrent use.
+ */
+public class ImportCache
+{
+	private final OntologyCatalog			catalog;
+	/** Holds the cached imports; it never loads anything itself. */
+	private final OWLOntologyManager		store	= OWLManager.createConcurrentOWLOntologyManager();
+	/** Cached imports by ontology IRI, version IRI and document IRI. */
+	private final Map<IRI, OWLOntology>		byIRI	= new ConcurrentHashMap<>();
+
+	/**
+	 * @param catalog
+	 *            resolves the imports that are not cached
+	 */
+	public ImportCache(OntologyCatalog catalog)
+	{
+		this.catalog = catalog;
+	}
+
+	public OntologyCatalog getCatalog()
+	{
+		return catalog;
+	}
+
+	/**
+	 * Makes a fresh manager resolve imports through the cache and the catalog
+	 * only.
+	 *
+	 * @param manager
+	 *            the manager of one input
+	 */
+	public void attach(OWLOntologyManager manager)
+	{
+		manager.getIRIMappers().set(new Resolver(manager));
+	}
+
+	/**
+	 * Caches the imports of a loaded input that are not cached yet.
+	 *
+	 * @param input
+	 *            the loaded input, which itself is not cached
+	 */
+	public synchronized void addImports(OWLOntology input)
+	{
+		input.importsClosure().forEach(imported -> {
+			OWLOntologyID id = imported.getOntologyID();
+			if(imported == input || id.isAnonymous() || store.contains(id))
+				return;
+
+			try
+			{
+				OWLOntology cached = store.copyOntology(imported, OntologyCopy.DEEP);
+				id.getOntologyIRI().ifPresent(iri -> byIRI.putIfAbsent(iri, cached));
+				id.getVersionIRI().ifPresent(iri -> byIRI.putIfAbsent(iri, cached));
+				byIRI.putIfAbsent(imported.getOWLOntologyManager().getOntologyDocumentIRI(imported), cached);
+			}
+			catch(OWLOntologyCreationException e)
+			{
+				// Parsed again by the next input that needs it
+			}
+		});
+	}
+
+	/**
+	 * @return the number of cached imports
+	 */
+	public long size()
+	{
+		return store.ontologies().count();
+	}
+
+	/**
+	 * Copies a cached import, with the imports it has in turn, into the
+	 * manager of an input when the manager looks for its document.
+	 */
+	private final class Resolver implements OWLOntologyIRIMapper
+	{
+		private final OWLOntologyManager manager;
+
+		Resolver(OWLOntologyManager manager)
+		{
+			this.manager = manager;
+		}
+
+		@Override
+		public IRI getDocumentIRI(IRI ontologyIRI)
+		{
+			OWLOntology cached = byIRI.get(ontologyIRI);
+			if(cached != null && copy(cached))
+				return store.getOntologyDocumentIRI(cached);
+			return catalog.getDocumentIRI(ontologyIRI);
+		}
+
+		/**
+		 * @return whether the import is in the manager, so that it is found
+		 *         by its document IRI
+		 */
+		private boolean copy(OWLOntology cached)
+		{
+			cached.importsClosure().forEach(o -> {
+				if(!manager.contains(o.getOntologyID()))
+				{
+					try
+					{
+						manager.copyOntology(o, OntologyCopy.DEEP);
+					}
+					catch(OWLOntologyCreationException e)
+					{
+						// Left to the parser
+					}
+				}
+			});
+			return manager.contains(cached.getOntologyID());
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ontology document to convert, with the name of its output relative to
+ * the output directory and without extension, e.g. {@code sub/dir/pizza} for
+ * {@code input/sub/dir/pizza.owl}. Names always use '/' as separator.
+ */
+public class InputFile
+{
+	private final File		file;
+	private final String	outputName;
+
+	/**
+	 * @param file
+	 * @param outputName
+	 *            relative output name without extension
+	 */
+	public InputFile(File file, String outputName)
+	{
+		this.file = file;
+		this.outputName = outputName;
+	}
+
+	/**
+	 * @param files
+	 * @return the files, each with an output named after it in the output
+	 *         directory itself
+	 */
+	public static List<InputFile> of(List<File> files)
+	{
+		List<InputFile> inputs = new ArrayList<>(files.size());
+		for(File file : files)
+		{
+			inputs.add(new InputFile(file, App.stripExt(file.getName())));
+		}
+		return inputs;
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	public String getOutputName()
+	{
+		return outputName;
+	}
+
+	@Override
+	public String toString()
+	{
+		return file.toString();
+	}
+}
@@ -0,0 +1,194 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Expands command line arguments into input files. An argument may be
+ * <ul>
+ * <li>a file, converted into the output directory itself,</li>
+ * <li>a directory, searched recursively for files whose name matches the
+ * include pattern,</li>
+ * <li>a glob pattern such as {@code onts/**}{@code /*.owl}, matched against
+ * the paths below its longest directory prefix without wildcards.</li>
+ * </ul>
+ * Files found in a directory or by a pattern keep their path relative to the
+ * directory or prefix in the output directory.
+ */
+public class InputScanner
+{
+	/** Default pattern for the names of ontology files in directories. */
+	public static final String	DEFAULT_INCLUDE	= "*.{owl,ofn,omn,owx,rdf,ttl,nt,obo}";
+
+	private final PathMatcher	include;
+
+	/**
+	 * @param include
+	 *            glob for the names of files taken from directories
+	 */
+	public InputScanner(String include)
+	{
+		this.include = FileSystems.getDefault().getPathMatcher("glob:" + include);
+	}
+
+	/**
+	 * @param arg
+	 *            a file, directory or glob pattern
+	 * @return the matching files, sorted by path
+	 * @throws IOException
+	 *             if the argument matches nothing that exists
+	 */
+	public List<InputFile> scan(String arg) throws IOException
+	{
+		return source(arg).scan();
+	}
+
+	/**
+	 * @param arg
+	 *            a file, directory or glob pattern
+	 * @return the files the argument stands for, now or after later changes
+	 * @throws FileNotFoundException
+	 *             if the file or directory of the argument does not exist
+	 */
+	public Source source(String arg) throws FileNotFoundException
+	{
+		int wildcard = firstWildcard(arg);
+		if(wildcard >= 0)
+		{
+			// Split into the directory before the first wildcard and the rest
+			int slash = Math.max(arg.lastIndexOf('/', wildcard), arg.lastIndexOf('\\', wildcard));
+			Path base = Paths.get(slash < 0 ? "." : arg.substring(0, slash + 1));
+			PathMatcher pattern = FileSystems.getDefault().getPathMatcher("glob:" + arg.substring(slash + 1));
+			if(!Files.isDirectory(base))
+				throw new FileNotFoundException(base.toString());
+			return new Source(base, pattern, true, null);
+		}
+
+		Path path = Paths.get(arg);
+		if(Files.isDirectory(path))
+			return new Source(path, include, false, null);
+		if(Files.isRegularFile(path))
+		{
+			Path parent = path.getParent();
+			return new Source(parent == null ? Paths.get(".") : parent, null, false, path);
+		}
+
+		throw new FileNotFoundException(arg);
+	}
+
+	/**
+	 * The files of one argument: a single file, or those below a directory
+	 * that match a pattern.
+	 */
+	public static final class Source
+	{
+		private final Path			dir;
+		private final PathMatcher	pattern;
+		private final boolean		matchRelative;
+		private final Path			file;
+
+		/**
+		 * @param pattern
+		 *            applied to the path relative to dir if matchRelative, else
+		 *            to the file name
+		 * @param file
+		 *            the only file of the source, or null
+		 */
+		Source(Path dir, PathMatcher pattern, boolean matchRelative, Path file)
+		{
+			this.dir = dir;
+			this.pattern = pattern;
+			this.matchRelative = matchRelative;
+			this.file = file;
+		}
+
+		/**
+		 * @return the directory holding the files
+		 */
+		public Path getDirectory()
+		{
+			return dir;
+		}
+
+		/**
+		 * @return whether files in subdirectories belong to the source
+		 */
+		public boolean isRecursive()
+		{
+			return file == null;
+		}
+
+		/**
+		 * @param path
+		 *            a path starting with {@link #getDirectory()}
+		 * @return the input for the path, or null if it is not one of the
+		 *         source's files
+		 */
+		public InputFile match(Path path)
+		{
+			if(file != null)
+				return path.normalize().equals(file.normalize()) ? new InputFile(file.toFile(), App.stripExt(file.getFileName().toString()))
+				        : null;
+
+			if(!path.startsWith(dir) || path.equals(dir))
+				return null;
+			Path relative = dir.relativize(path);
+			if(!pattern.matches(matchRelative ? relative : path.getFileName()))
+				return null;
+			return new InputFile(path.toFile(), App.stripExt(relative.toString().replace('\\', '/')));
+		}
+
+		/**
+		 * @return the source's files, sorted by path
+		 * @throws IOException
+		 */
+		public List<InputFile> scan() throws IOException
+		{
+			if(file != null)
+				return Collections.singletonList(match(file));
+
+			List<Path> paths;
+			try(Stream<Path> walk = Files.walk(dir))
+			{
+				paths = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+			}
+
+			List<InputFile> inputs = new ArrayList<>(paths.size());
+			for(Path p : paths)
+			{
+				InputFile input = match(p);
+				if(input != null)
+				{
+					inputs.add(input);
+				}
+			}
+			return inputs;
+		}
+	}
+
+	private static int firstWildcard(String arg)
+	{
+		for(int i = 0; i < arg.length(); i++)
+		{
+			switch(arg.charAt(i))
+			{
+				case '*':
+				case '?':
+				case '[':
+				case '{':
+					return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,200 @@
+package org.dase.cogan.owl2dl_m;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reports the inputs of a set of {@link InputScanner.Source}s that were
+ * created or modified. Editors often save a file in several writes, or write a
+ * temporary file and rename it, so changes are collected until none has
+ * arrived for the debounce delay and then reported together, each input once.
+ * Directories created later below a recursive source are watched as well.
+ */
+public class InputWatcher implements Closeable
+{
+	private final List<InputScanner.Source>	sources;
+	private final long						debounceMillis;
+	private final WatchService				watcher;
+	private final Map<WatchKey, Path>		directories	= new HashMap<>();
+
+	private long							firstChange;
+
+	/**
+	 * Starts watching. Changes from now on are reported by {@link #take()}.
+	 *
+	 * @param sources
+	 * @param debounceMillis
+	 *            how long changes must pause before they are reported
+	 * @throws IOException
+	 */
+	public InputWatcher(List<InputScanner.Source> sources, long debounceMillis) throws IOException
+	{
+		this.sources = sources;
+		this.debounceMillis = debounceMillis;
+		this.watcher = sources.isEmpty() ? null : sources.get(0).getDirectory().getFileSystem().newWatchService();
+
+		for(InputScanner.Source source : sources)
+		{
+			if(source.isRecursive())
+			{
+				registerTree(source.getDirectory());
+			}
+			else
+			{
+				register(source.getDirectory());
+			}
+		}
+	}
+
+	/**
+	 * Waits for changes.
+	 *
+	 * @return the changed inputs, in the order they changed first
+	 * @throws InterruptedException
+	 * @throws IOException
+	 *             if a new directory cannot be watched
+	 */
+	public List<InputFile> take() throws InterruptedException, IOException
+	{
+		Map<String, InputFile> changed = new LinkedHashMap<>();
+		while(changed.isEmpty())
+		{
+			if(watcher == null)
+				throw new InterruptedException("Nothing to watch");
+
+			WatchKey key = watcher.take();
+			firstChange = System.nanoTime();
+			collect(key, changed);
+
+			// Wait until the changes pause
+			for(key = watcher.poll(debounceMillis, TimeUnit.MILLISECONDS); key != null; key = watcher
+			        .poll(debounceMillis, TimeUnit.MILLISECONDS))
+			{
+				collect(key, changed);
+			}
+		}
+		return new ArrayList<>(changed.values());
+	}
+
+	/**
+	 * @return {@link System#nanoTime()} when the first change reported by the
+	 *         last {@link #take()} was seen
+	 */
+	public long getFirstChange()
+	{
+		return firstChange;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if(watcher != null)
+		{
+			watcher.close();
+		}
+	}
+
+	private void collect(WatchKey key, Map<String, InputFile> changed) throws IOException
+	{
+		Path dir = directories.get(key);
+		for(WatchEvent<?> event : key.pollEvents())
+		{
+			if(event.kind() == OVERFLOW)
+			{
+				// Events were lost; report everything and let the caller skip
+				// what is up to date
+				for(InputScanner.Source source : sources)
+				{
+					for(InputFile input : source.scan())
+					{
+						changed.putIfAbsent(input.getOutputName(), input);
+					}
+				}
+				continue;
+			}
+
+			Path path = dir.resolve((Path) event.context());
+			if(Files.isDirectory(path))
+			{
+				if(event.kind() == ENTRY_CREATE && isBelowRecursiveSource(path))
+				{
+					// Files may have been created before the directory was
+					// registered, so report those as well
+					registerTree(path);
+					try(Stream<Path> files = Files.walk(path))
+					{
+						for(Path file : files.filter(Files::isRegularFile).collect(Collectors.toList()))
+						{
+							add(file, changed);
+						}
+					}
+				}
+			}
+			else
+			{
+				add(path, changed);
+			}
+		}
+		if(!key.reset())
+		{
+			directories.remove(key);
+		}
+	}
+
+	private void add(Path path, Map<String, InputFile> changed)
+	{
+		for(InputScanner.Source source : sources)
+		{
+			InputFile input = source.match(path);
+			if(input != null)
+			{
+				changed.putIfAbsent(input.getOutputName(), input);
+				return;
+			}
+		}
+	}
+
+	private boolean isBelowRecursiveSource(Path path)
+	{
+		for(InputScanner.Source source : sources)
+		{
+			if(source.isRecursive() && path.startsWith(source.getDirectory()))
+				return true;
+		}
+		return false;
+	}
+
+	private void registerTree(Path root) throws IOException
+	{
+		try(Stream<Path> tree = Files.walk(root))
+		{
+			for(Path dir : tree.filter(Files::isDirectory).collect(Collectors.toList()))
+			{
+				register(dir);
+			}
+		}
+	}
+
+	private void register(Path dir) throws IOException
+	{
+		// Registering a directory twice returns the same key
+		directories.put(dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY), dir);
+	}
+}
@@ -0,0 +1,57 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.util.Arrays;
+
+/**
+ * The latest latencies of a server, kept in a ring buffer of fixed size so
+ * that percentiles follow the current load and memory stays constant. Safe
+ * for concurrent use.
+ */
+public class LatencyWindow
+{
+	private final long[]	nanos;
+	private int				next;
+	private int				count;
+
+	/**
+	 * @param size
+	 *            number of latest latencies kept
+	 */
+	public LatencyWindow(int size)
+	{
+		this.nanos = new long[size];
+	}
+
+	public synchronized void add(long latency)
+	{
+		nanos[next] = latency;
+		next = (next + 1) % nanos.length;
+		count = Math.min(count + 1, nanos.length);
+	}
+
+	/**
+	 * @return the kept latencies in ascending order
+	 */
+	public synchronized long[] snapshot()
+	{
+		long[] sorted = Arrays.copyOf(nanos, count);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * @param sorted
+	 *            latencies in ascending order
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return the nearest-rank percentile, or 0 if there are no latencies
+	 */
+	public static long percentile(long[] sorted, double percentile)
+	{
+		if(sorted.length == 0)
+			return 0;
+
+		int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+		return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+	}
+}
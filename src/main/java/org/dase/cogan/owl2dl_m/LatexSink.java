@@ -0,0 +1,284 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.semanticweb.owlapi.model.OWLRuntimeException;
+
+/**
+ * Output sink for rendered LaTeX, used instead of OWLAPI's LatexWriter on the
+ * rendering hot path. Constants, names and numbers are copied straight into a
+ * reusable char buffer, so appending allocates nothing once the buffer has
+ * grown to size. The buffer is written to the underlying writer when it fills
+ * up and on {@link #flush()}.
+ * <p>
+ * A sink without a writer only buffers; its content is read with
+ * {@link #toString()} or appended to another sink. Parts of the output can be
+ * captured as strings with {@link #beginCapture()} and
+ * {@link #endCapture(int)}; the buffer is not written out while a capture is
+ * open. Each capture allocates the string it returns, so the paths that fill
+ * the expression and render caches are not free of allocation.
+ * <p>
+ * IO errors are reported as OWLRuntimeException, like LatexWriter does.
+ */
+public class LatexSink
+{
+	private static final int		DEFAULT_CAPACITY	= 8192;
+
+	/** Replacement for each ASCII character, null if it is written as is. */
+	private static final String[]	ESCAPES				= new String[128];
+
+	static
+	{
+		ESCAPES['_'] = "\\_";
+		ESCAPES['#'] = "\\#";
+	}
+
+	private final Writer			out;
+	private char[]					buf;
+	private int						pos;
+	private int						captures;
+	private long					written;
+
+	/**
+	 * Creates a sink that only buffers.
+	 */
+	public LatexSink()
+	{
+		this(null);
+	}
+
+	/**
+	 * @param out
+	 *            receives the output, or null to only buffer
+	 */
+	public LatexSink(Writer out)
+	{
+		this.out = out;
+		this.buf = new char[DEFAULT_CAPACITY];
+	}
+
+	public LatexSink append(String s)
+	{
+		int n = s.length();
+		reserve(n);
+		s.getChars(0, n, buf, pos);
+		pos += n;
+		return this;
+	}
+
+	public LatexSink append(char c)
+	{
+		reserve(1);
+		buf[pos++] = c;
+		return this;
+	}
+
+	/**
+	 * Appends the decimal digits of i without creating a string.
+	 *
+	 * @param i
+	 * @return this
+	 */
+	public LatexSink append(int i)
+	{
+		if(i == Integer.MIN_VALUE)
+			return append(Integer.toString(i));
+
+		reserve(11);
+		if(i < 0)
+		{
+			buf[pos++] = '-';
+			i = -i;
+		}
+
+		int digits = 1;
+		for(int rest = i / 10; rest > 0; rest /= 10)
+		{
+			digits++;
+		}
+		for(int p = pos + digits - 1; p >= pos; p--)
+		{
+			buf[p] = (char) ('0' + i % 10);
+			i /= 10;
+		}
+		pos += digits;
+		return this;
+	}
+
+	/**
+	 * Appends the buffered content of another sink.
+	 *
+	 * @param other
+	 *            a sink without writer
+	 * @return this
+	 */
+	public LatexSink append(LatexSink other)
+	{
+		reserve(other.pos);
+		System.arraycopy(other.buf, 0, buf, pos, other.pos);
+		pos += other.pos;
+		return this;
+	}
+
+	/**
+	 * Appends a name with LaTeX special characters escaped.
+	 *
+	 * @param name
+	 * @return this
+	 */
+	public LatexSink appendEscaped(String name)
+	{
+		for(int i = 0; i < name.length(); i++)
+		{
+			char c = name.charAt(i);
+			String escape = c < ESCAPES.length ? ESCAPES[c] : null;
+			if(escape != null)
+			{
+				append(escape);
+			}
+			else
+			{
+				append(c);
+			}
+		}
+		return this;
+	}
+
+	public LatexSink openBrace()
+	{
+		return append("\\{");
+	}
+
+	public LatexSink closeBrace()
+	{
+		return append("\\}");
+	}
+
+	/**
+	 * Starts capturing output.
+	 *
+	 * @return the start of the capture, to pass to {@link #endCapture(int)}
+	 */
+	public int beginCapture()
+	{
+		captures++;
+		return pos;
+	}
+
+	/**
+	 * Ends a capture. The captured text stays in the output.
+	 *
+	 * @param start
+	 *            value returned by {@link #beginCapture()}
+	 * @return the text written since the capture began, as a new string
+	 */
+	public String endCapture(int start)
+	{
+		captures--;
+		return new String(buf, start, pos - start);
+	}
+
+	/**
+	 * Writes the buffer to the underlying writer and flushes it.
+	 */
+	public void flush()
+	{
+		if(out == null)
+			return;
+
+		try
+		{
+			out.write(buf, 0, pos);
+			written += pos;
+			pos = 0;
+			out.flush();
+		}
+		catch(IOException e)
+		{
+			throw new OWLRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Discards the buffered content.
+	 */
+	public void clear()
+	{
+		pos = 0;
+	}
+
+	/**
+	 * @return the number of buffered characters
+	 */
+	public int length()
+	{
+		return pos;
+	}
+
+	/**
+	 * @return the number of characters appended since the sink was created,
+	 *         including those already written out, less those cleared
+	 */
+	public long position()
+	{
+		return written + pos;
+	}
+
+	@Override
+	public String toString()
+	{
+		return new String(buf, 0, pos);
+	}
+
+	/**
+	 * Escapes LaTeX special characters in a name, returning the name itself if
+	 * there is nothing to escape.
+	 *
+	 * @param name
+	 * @return the escaped name
+	 */
+	public static String escape(String name)
+	{
+		for(int i = 0; i < name.length(); i++)
+		{
+			char c = name.charAt(i);
+			if(c < ESCAPES.length && ESCAPES[c] != null)
+			{
+				return new LatexSink().appendEscaped(name).toString();
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Makes room for n more characters, writing the buffer out if possible
+	 * and growing it otherwise.
+	 */
+	private void reserve(int n)
+	{
+		if(pos + n <= buf.length)
+			return;
+
+		if(out != null && captures == 0)
+		{
+			try
+			{
+				out.write(buf, 0, pos);
+				written += pos;
+				pos = 0;
+			}
+			catch(IOException e)
+			{
+				throw new OWLRuntimeException(e);
+			}
+
+			if(n <= buf.length)
+				return;
+		}
+
+		char[] bigger = new char[Math.max(buf.length * 2, pos + n)];
+		System.arraycopy(buf, 0, bigger, 0, pos);
+		buf = bigger;
+	}
+}
@@ -0,0 +1,148 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Post-processing stage between {@link MyLatexRenderer} and the output file.
+ * Text is buffered until a line is complete, then passed through
+ * {@link App#splitLine(CharSequence, Appendable)} into the underlying writer,
+ * so a document is wrapped while it is rendered instead of in a second pass.
+ */
+public class LineWrappingWriter extends Writer
+{
+	private static final String	NEWLINE	= System.lineSeparator();
+
+	private final Writer		out;
+	private final Cancellation	cancellation;
+	private final StringBuilder	line	= new StringBuilder();
+
+	/**
+	 * @param out
+	 *            receives the wrapped lines
+	 */
+	public LineWrappingWriter(Writer out)
+	{
+		this(out, Cancellation.NONE);
+	}
+
+	/**
+	 * @param out
+	 *            receives the wrapped lines
+	 * @param cancellation
+	 *            checked before each line, throwing a
+	 *            {@link ConversionCancelledException} to stop
+	 */
+	public LineWrappingWriter(Writer out, Cancellation cancellation)
+	{
+		super(out);
+		this.out = out;
+		this.cancellation = cancellation;
+	}
+
+	@Override
+	public void write(int c) throws IOException
+	{
+		if(c == '\n')
+		{
+			writeLine();
+		}
+		else
+		{
+			line.append((char) c);
+		}
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException
+	{
+		int start = off;
+		for(int i = off; i < off + len; i++)
+		{
+			if(cbuf[i] == '\n')
+			{
+				line.append(cbuf, start, i - start);
+				writeLine();
+				start = i + 1;
+			}
+		}
+		line.append(cbuf, start, off + len - start);
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException
+	{
+		int start = off;
+		for(int i = str.indexOf('\n', off); i >= 0 && i < off + len; i = str.indexOf('\n', i + 1))
+		{
+			line.append(str, start, i);
+			writeLine();
+			start = i + 1;
+		}
+		line.append(str, start, off + len);
+	}
+
+	/**
+	 * Flushes the underlying writer. An incomplete line stays buffered, as it
+	 * cannot be wrapped before its end is known.
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		out.flush();
+	}
+
+	/**
+	 * Writes the incomplete last line, if any, and closes the underlying
+	 * writer, also after a cancellation.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			if(line.length() > 0)
+			{
+				wrapLine();
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private void writeLine() throws IOException
+	{
+		cancellation.check();
+		wrapLine();
+	}
+
+	private void wrapLine() throws IOException
+	{
+		// Treat \r\n like the Scanner based post-processing did
+		if(line.length() > 0 && line.charAt(line.length() - 1) == '\r')
+		{
+			line.setLength(line.length() - 1);
+		}
+
+		ConversionEvents.LineWrap event = ConversionEvents.ENABLED ? new ConversionEvents.LineWrap() : null;
+		if(event != null)
+		{
+			event.begin();
+		}
+		App.splitLine(line, out);
+		if(event != null)
+		{
+			event.end();
+			if(event.shouldCommit())
+			{
+				event.chars = line.length();
+				event.commit();
+			}
+		}
+
+		out.write(NEWLINE);
+		line.setLength(0);
+	}
+}
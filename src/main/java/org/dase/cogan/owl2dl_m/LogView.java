@@ -0,0 +1,186 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.ListView;
+import javafx.util.Duration;
+
+/**
+ * Log of the GUI for batches of any size. Messages from worker threads go into
+ * a lock-free queue, which the FX thread drains a fixed number of times per
+ * second, so a flood of messages costs one update per frame instead of one per
+ * message. The list view only lays out its visible rows and keeps the last
+ * lines only; the complete log is written to a file.
+ */
+public class LogView extends ListView<String>
+{
+	/** Drains of the message queue per second. */
+	private static final int				FRAMES_PER_SECOND	= 10;
+	/** Most messages taken per frame, so that a flood cannot stall a frame. */
+	private static final int				MAX_MESSAGES		= 20000;
+
+	private final int						maxLines;
+	private final Queue<String>				pending				= new ConcurrentLinkedQueue<>();
+	private final ObservableList<String>	lines				= FXCollections.observableArrayList();
+	private final StringBuilder				partial				= new StringBuilder();
+	private final Timeline					timeline;
+	private final File						spillFile;
+	private Writer							spill;
+
+	/**
+	 * Creates the view and starts draining. Call on the FX thread.
+	 *
+	 * @param maxLines
+	 *            number of lines kept in the view
+	 */
+	public LogView(int maxLines)
+	{
+		this.maxLines = maxLines;
+		setItems(lines);
+
+		File file = null;
+		try
+		{
+			file = File.createTempFile("owl2dl-m-", ".log");
+			spill = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+			lines.add("Full log: " + file);
+		}
+		catch(IOException e)
+		{
+			lines.add("The full log cannot be kept: " + e.getMessage());
+			file = null;
+		}
+		spillFile = file;
+
+		timeline = new Timeline(new KeyFrame(Duration.millis(1000.0 / FRAMES_PER_SECOND), e -> drain()));
+		timeline.setCycleCount(Animation.INDEFINITE);
+		timeline.play();
+	}
+
+	/**
+	 * Queues a message. Safe to call from any thread.
+	 *
+	 * @param message
+	 *            text, usually ending with a line break
+	 */
+	public void append(String message)
+	{
+		pending.offer(message);
+	}
+
+	/**
+	 * @return the file with the complete log, or null if there is none
+	 */
+	public File getSpillFile()
+	{
+		return spillFile;
+	}
+
+	/**
+	 * Stops draining and writes the remaining messages to the log file. Call
+	 * on the FX thread.
+	 */
+	public void close()
+	{
+		timeline.stop();
+		drain();
+		if(spill != null)
+		{
+			try
+			{
+				spill.close();
+			}
+			catch(IOException e)
+			{
+				// Nothing left to report it to
+			}
+			spill = null;
+		}
+	}
+
+	/**
+	 * Moves queued messages into the view and the log file.
+	 */
+	private void drain()
+	{
+		List<String> added = new ArrayList<>();
+		String message;
+		for(int n = 0; n < MAX_MESSAGES && (message = pending.poll()) != null; n++)
+		{
+			spill(message);
+
+			// Messages may end in the middle of a line
+			int start = 0;
+			for(int i = message.indexOf('\n'); i >= 0; i = message.indexOf('\n', start))
+			{
+				partial.append(message, start, i);
+				added.add(partial.toString());
+				partial.setLength(0);
+				start = i + 1;
+			}
+			partial.append(message, start, message.length());
+		}
+		flushSpill();
+
+		if(added.isEmpty())
+			return;
+
+		// Only the newest lines are shown
+		if(added.size() > maxLines)
+		{
+			added = added.subList(added.size() - maxLines, added.size());
+		}
+		int excess = lines.size() + added.size() - maxLines;
+		if(excess > 0)
+		{
+			lines.remove(0, excess);
+		}
+		lines.addAll(added);
+		scrollTo(lines.size() - 1);
+	}
+
+	private void spill(String message)
+	{
+		if(spill == null)
+			return;
+
+		try
+		{
+			spill.write(message);
+		}
+		catch(IOException e)
+		{
+			lines.add("Stopped writing the full log: " + e.getMessage());
+			spill = null;
+		}
+	}
+
+	private void flushSpill()
+	{
+		if(spill == null)
+			return;
+
+		try
+		{
+			spill.flush();
+		}
+		catch(IOException e)
+		{
+			lines.add("Stopped writing the full log: " + e.getMessage());
+			spill = null;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the SHA-256 hash of the input each output was converted from, so
+ * that an input whose content did not change is recognised as up to date even
+ * if its modification time did (e.g. after a fresh checkout). Stored as one
+ * "hash TAB output name" line per output. Safe for concurrent use.
+ */
+public class Manifest
+{
+	/** File name of the manifest in the output directory. */
+	public static final String			FILE_NAME	= ".owl2dl-m-manifest";
+
+	private final Path					path;
+	private final Map<String, String>	hashes		= new ConcurrentHashMap<>();
+
+	private Manifest(Path path)
+	{
+		this.path = path;
+	}
+
+	/**
+	 * Loads the manifest of an output directory. A missing manifest is empty.
+	 *
+	 * @param outputDir
+	 * @return the manifest
+	 * @throws IOException
+	 */
+	public static Manifest load(File outputDir) throws IOException
+	{
+		Manifest manifest = new Manifest(outputDir.toPath().resolve(FILE_NAME));
+		try(BufferedReader in = Files.newBufferedReader(manifest.path, StandardCharsets.UTF_8))
+		{
+			for(String line = in.readLine(); line != null; line = in.readLine())
+			{
+				int tab = line.indexOf('\t');
+				if(tab > 0)
+				{
+					manifest.hashes.put(line.substring(tab + 1), line.substring(0, tab));
+				}
+			}
+		}
+		catch(NoSuchFileException e)
+		{
+			// First run
+		}
+		return manifest;
+	}
+
+	/**
+	 * @param outputName
+	 * @return the hash of the input the output was made from, or null
+	 */
+	public String get(String outputName)
+	{
+		return hashes.get(outputName);
+	}
+
+	public void put(String outputName, String hash)
+	{
+		hashes.put(outputName, hash);
+	}
+
+	/**
+	 * Writes the manifest, replacing the previous one in a single step.
+	 *
+	 * @throws IOException
+	 */
+	public void save() throws IOException
+	{
+		Path tmp = path.resolveSibling(FILE_NAME + ".new");
+		try(BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+		{
+			for(Map.Entry<String, String> entry : new TreeMap<>(hashes).entrySet())
+			{
+				out.write(entry.getValue());
+				out.write('\t');
+				out.write(entry.getKey());
+				out.write('\n');
+			}
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @param file
+	 * @return the SHA-256 hash of the file's content, in hex
+	 * @throws IOException
+	 */
+	public static String hash(File file) throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			// Every Java platform supports SHA-256
+			throw new IllegalStateException(e);
+		}
+
+		byte[] buffer = new byte[1 << 16];
+		try(InputStream in = Files.newInputStream(file.toPath()))
+		{
+			for(int n = in.read(buffer); n >= 0; n = in.read(buffer))
+			{
+				digest.update(buffer, 0, n);
+			}
+		}
+
+		StringBuilder hex = new StringBuilder(64);
+		for(byte b : digest.digest())
+		{
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -21,7 +21,6 @@ import java.util.List;
 import java.util.Set;
 
 import org.semanticweb.owlapi.latex.renderer.LatexBracketChecker;
-import org.semanticweb.owlapi.latex.renderer.LatexWriter;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.util.CollectionFactory;
 import org.semanticweb.owlapi.util.ShortFormProvider;
@@ -80,10 +79,11 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 	public static final String		INVERSE		= "^- ";
 	// @formatter:on
 	private OWLObject				subject;
-	private final LatexWriter		writer;
+	private final LatexSink			writer;
 	private boolean					prettyPrint	= true;
 	private final OWLDataFactory	df;
-	private ShortFormProvider		shortFormProvider;
+	private EntityNameCache			names;
+	private ExpressionCache			expressions;
 
 	/**
 	 * @param writer
@@ -91,11 +91,25 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 	 * @param df
 	 *            data factory
 	 */
-	public MyLatexObjectVisitor(LatexWriter writer, OWLDataFactory df)
+	public MyLatexObjectVisitor(LatexSink writer, OWLDataFactory df)
+	{
+		this(writer, df, new EntityNameCache(new SimpleShortFormProvider()));
+	}
+
+	/**
+	 * @param writer
+	 *            writer
+	 * @param df
+	 *            data factory
+	 * @param names
+	 *            entity names, may be shared with other visitors of the same
+	 *            document
+	 */
+	public MyLatexObjectVisitor(LatexSink writer, OWLDataFactory df, EntityNameCache names)
 	{
 		this.writer = writer;
 		this.df = df;
-		shortFormProvider = new SimpleShortFormProvider();
+		this.names = names;
 		subject = df.getOWLThing();
 	}
 
@@ -108,39 +122,54 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 		this.subject = subject;
 	}
 
+	/**
+	 * @param expressions
+	 *            cache of rendered class expressions, or null to render every
+	 *            expression
+	 */
+	public void setExpressionCache(ExpressionCache expressions)
+	{
+		this.expressions = expressions;
+	}
+
 	/**
 	 * @param shortFormProvder
 	 *            shortFormProvder
 	 */
 	public void setShortFormProvider(ShortFormProvider shortFormProvder)
 	{
-		shortFormProvider = shortFormProvder;
+		names = new EntityNameCache(shortFormProvder);
 	}
 
 	private void writeSpace()
 	{
 		//writer.writeSpace();
-		writer.write(" ");
+		writer.append(' ');
 	}
 
-	private void write(Object o)
+	private void write(String s)
 	{
-		writer.write(o);
+		writer.append(s);
 	}
 
 	private void write(int i)
 	{
-		writer.write(Integer.toString(i));
+		writer.append(i);
+	}
+
+	private void writeText(String text)
+	{
+		writer.append("\\text{").append(text).append('}');
 	}
 
 	private void writeOpenBrace()
 	{
-		writer.writeOpenBrace();
+		writer.openBrace();
 	}
 
 	private void writeCloseBrace()
 	{
-		writer.writeCloseBrace();
+		writer.closeBrace();
 	}
 
 	/**
@@ -165,7 +194,7 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 	{
 		for(Iterator<? extends OWLClassExpression> it = ce.operands().iterator(); it.hasNext();)
 		{
-			it.next().accept(this);
+			writeClassExpression(it.next());
 			if(it.hasNext())
 			{
 				writeSpace();
@@ -299,7 +328,7 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 	{
 		for(Iterator<? extends OWLClassExpression> it = ce.operands().iterator(); it.hasNext();)
 		{
-			it.next().accept(this);
+			writeClassExpression(it.next());
 			if(it.hasNext())
 			{
 				writeSpace();
@@ -312,9 +341,7 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 	@Override
 	public void visit(OWLClass ce)
 	{
-		String name = escapeName(shortFormProvider.getShortForm(ce));
-
-		write(name.equals("Thing") ? TOP : "\\text{" + name + "}");
+		write(names.getToken(ce));
 	}
 
 	@Override
@@ -337,31 +364,19 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 	@Override
 	public void visit(OWLDataProperty property)
 	{
-		String s = "\\text{";
-		s += escapeName(shortFormProvider.getShortForm(property));
-		s += "}";
-		
-		write(s);
+		write(names.getToken(property));
 	}
 
 	@Override
 	public void visit(OWLObjectProperty property)
 	{
-		String s = "\\text{";
-		s += escapeName(shortFormProvider.getShortForm(property));
-		s += "}";
-		
-		write(s);
+		write(names.getToken(property));
 	}
 
 	@Override
 	public void visit(OWLNamedIndividual individual)
 	{
-		String s = "\\text{";
-		s += escapeName(shortFormProvider.getShortForm(individual));
-		s += "}";
-		
-		write(s);
+		write(names.getToken(individual));
 	}
 
 	@Override
@@ -384,7 +399,7 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 		// Write each class
 		for(Iterator<OWLClassExpression> it = classExpressions.iterator(); it.hasNext();)
 		{
-			it.next().accept(this);
+			writeClassExpression(it.next());
 			if(it.hasNext())
 			{
 				write(",");
@@ -403,7 +418,7 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 		// Write each class
 		for(Iterator<OWLClassExpression> it = classExpressions.iterator(); it.hasNext();)
 		{
-			it.next().accept(this);
+			writeClassExpression(it.next());
 			if(it.hasNext())
 			{
 				write(",");
@@ -417,11 +432,11 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 	public void visit(OWLSubClassOfAxiom axiom)
 	{
 		setPrettyPrint(false);
-		axiom.getSubClass().accept(this);
+		writeClassExpression(axiom.getSubClass());
 		writeSpace();
 		write(SUBCLASS);
 		writeSpace();
-		axiom.getSuperClass().accept(this);
+		writeClassExpression(axiom.getSuperClass());
 		writeSpace();
 		setPrettyPrint(true);
 	}
@@ -433,7 +448,7 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 		writeSpace();
 		write(":");
 		writeSpace();
-		axiom.getClassExpression().accept(this);
+		writeClassExpression(axiom.getClassExpression());
 	}
 
 	@Override
@@ -467,7 +482,7 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 		writeSpace();
 		write(SUBCLASS);
 		writeSpace();
-		axiom.getDomain().accept(this);
+		writeClassExpression(axiom.getDomain());
 	}
 
 	@Override
@@ -554,7 +569,7 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 		
 		for(Iterator<OWLClassExpression> it = axiom.classExpressions().iterator(); it.hasNext();)
 		{
-			it.next().accept(this);
+			writeClassExpression(it.next());
 			if(it.hasNext())
 			{
 				write(",");
@@ -736,7 +751,7 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 		writeSpace();
 		write(SUBCLASS);
 		writeSpace();
-		axiom.getDomain().accept(this);
+		writeClassExpression(axiom.getDomain());
 	}
 
 	@Override
@@ -825,16 +840,48 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 	@Override
 	public void visit(SWRLVariable node)
 	{
-		write(node.getIRI());
+		write(node.getIRI().toString());
 	}
 
 	private void writeNested(OWLClassExpression classExpression)
 	{
 		openBracket(classExpression);
-		classExpression.accept(this);
+		writeClassExpression(classExpression);
 		closeBracket(classExpression);
 	}
 
+	/**
+	 * Writes a class expression, taking anonymous expressions from the
+	 * expression cache when one is set. On a miss the expression is rendered
+	 * as usual and the captured output is cached.
+	 */
+	private void writeClassExpression(OWLClassExpression classExpression)
+	{
+		if(expressions == null || !classExpression.isAnonymous())
+		{
+			classExpression.accept(this);
+			return;
+		}
+
+		String fragment = expressions.get(classExpression, prettyPrint);
+		if(fragment != null)
+		{
+			write(fragment);
+			return;
+		}
+
+		int start = writer.beginCapture();
+		try
+		{
+			classExpression.accept(this);
+		}
+		finally
+		{
+			fragment = writer.endCapture(start);
+		}
+		expressions.put(classExpression, prettyPrint, fragment);
+	}
+
 	private void writeNested(OWLObject expression)
 	{
 		expression.accept(this);
@@ -856,11 +903,6 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 		}
 	}
 
-	private static String escapeName(String name)
-	{
-		return name.replace("_", "\\_").replace("#", "\\#");
-	}
-
 	@Override
 	public void visit(OWLOntology ontology)
 	{
@@ -953,7 +995,7 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 	@Override
 	public void visit(OWLDatatype node)
 	{
-		write("\\text{" + getRendering(node) + "}");
+		writeText(getRendering(node));
 	}
 
 	@Override
@@ -961,9 +1003,9 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 	{
 		writeOpenBrace();
 		write("``");
-		write("\\text{" + node.getLiteral() + "}");
+		writeText(node.getLiteral());
 		write("\\text{''\\^{}\\^{}}");
-		write("\\text{" + getRendering(node.getDatatype()) + "}");
+		writeText(getRendering(node.getDatatype()));
 		writeCloseBrace();
 	}
 
@@ -1107,7 +1149,7 @@ public class MyLatexObjectVisitor implements OWLObjectVisitor
 	@Override
 	public void visit(OWLHasKeyAxiom axiom)
 	{
-		axiom.getClassExpression().accept(this);
+		writeClassExpression(axiom.getClassExpression());
 		write("&~hasKey~");
 		write("(");
 		for(Iterator<OWLPropertyExpression> it = axiom.propertyExpressions().iterator(); it.hasNext();)
@@ -1,97 +1,215 @@
 package org.dase.cogan.owl2dl_m;
 
-import static org.semanticweb.owlapi.util.OWLAPIPreconditions.verifyNotNull;
-import static org.semanticweb.owlapi.util.OWLAPIStreamUtils.asList;
-
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Stream;
 
-import javax.annotation.Nullable;
-
 import org.semanticweb.owlapi.io.AbstractOWLRenderer;
 import org.semanticweb.owlapi.io.OWLRendererException;
 import org.semanticweb.owlapi.latex.renderer.LatexRendererIOException;
-import org.semanticweb.owlapi.latex.renderer.LatexWriter;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLEntity;
 import org.semanticweb.owlapi.model.OWLOntology;
-import org.semanticweb.owlapi.model.OWLPropertyExpression;
 import org.semanticweb.owlapi.model.OWLRuntimeException;
-import org.semanticweb.owlapi.model.parameters.Imports;
-import org.semanticweb.owlapi.util.OWLEntityComparator;
 import org.semanticweb.owlapi.util.ShortFormProvider;
 import org.semanticweb.owlapi.util.SimpleShortFormProvider;
 
+/**
+ * Renders an ontology as a LaTeX document. All per-document state (writer,
+ * visitors, name cache, axiom index) is created inside {@link #render}, so a
+ * single instance can be shared by concurrent conversions.
+ */
 public class MyLatexRenderer extends AbstractOWLRenderer
 {
 
-	private final ShortFormProvider		shortFormProvider	= new SimpleShortFormProvider();
-	private final OWLEntityComparator	entityComparator	= new OWLEntityComparator(shortFormProvider);
+	/** Number of entities rendered by one task in parallel mode. */
+	private static final int		CHUNK_SIZE				= 256;
+	/** Chunks of a section rendered ahead of the writer, per pool thread. */
+	private static final int		CHUNKS_AHEAD			= 2;
+	/** Smallest signature sorted with Arrays.parallelSort in parallel mode. */
+	private static final int		PARALLEL_SORT_THRESHOLD	= 1 << 14;
+
+	/**
+	 * Headings of the entity sections, in document order: classes, object
+	 * properties, data properties, individuals and datatypes. The classes
+	 * heading is only written if there are classes.
+	 */
+	static final String[]			SECTION_HEADINGS		= { "\\subsection*{Classes}\n",
+	        "\\section*{Object properties}\n", "\\section*{Data properties}\n", "\\section*{Individuals}\n",
+	        "\\section*{Datatypes}\n" };
+	/** Names of the sections in {@link #SECTION_HEADINGS}, for files and reports. */
+	static final String[]			SECTION_NAMES			= { "classes", "objectProperties", "dataProperties",
+	        "individuals", "datatypes" };
 
-	private void writeEntitySection(OWLEntity entity, LatexWriter w)
+	/** Opens the files of a document written in parts. */
+	public interface PartOpener
 	{
-		w.write("\\subsubsection*{");
-		w.write(escapeName(shortFormProvider.getShortForm(entity)));
-		w.write("}\n");
+		/**
+		 * @param part
+		 *            path of the part relative to the master document, without
+		 *            extension
+		 * @return a writer for the part, closed by the renderer
+		 * @throws IOException
+		 */
+		Writer open(String part) throws IOException;
 	}
 
-	private static String escapeName(String name)
+	private final ShortFormProvider	shortFormProvider		= new SimpleShortFormProvider();
+	private boolean					parallel				= false;
+	private int						expressionCacheSize		= 0;
+
+	/**
+	 * @return true if entity sections are rendered concurrently
+	 */
+	public boolean isParallel()
 	{
-		return name.replace("_", "\\_").replace("#", "\\#");
+		return parallel;
+	}
+
+	/**
+	 * Renders the entity sections of a document concurrently on the common
+	 * fork/join pool. The output is identical to sequential rendering. The
+	 * tasks only read the {@link EntityAxiomIndex}, so the ontology itself does
+	 * not need to support concurrent reads. Large signatures are also sorted
+	 * in parallel. Set this before the renderer is shared between threads.
+	 * 
+	 * @param parallel
+	 *            parallel
+	 */
+	public void setParallel(boolean parallel)
+	{
+		this.parallel = parallel;
+	}
+
+	/**
+	 * @return the maximum number of cached class expressions per document, 0
+	 *         if the expression cache is disabled
+	 */
+	public int getExpressionCacheSize()
+	{
+		return expressionCacheSize;
+	}
+
+	/**
+	 * Enables memoized rendering of repeated anonymous class expressions
+	 * (see {@link ExpressionCache}). Each document gets its own cache of at
+	 * most the given number of fragments. Set this before the renderer is
+	 * shared between threads.
+	 * 
+	 * @param expressionCacheSize
+	 *            maximum number of cached expressions, 0 to disable
+	 */
+	public void setExpressionCacheSize(int expressionCacheSize)
+	{
+		this.expressionCacheSize = expressionCacheSize;
+	}
+
+	static void writeEntitySection(LatexSink w, String escapedName)
+	{
+		w.append("\\subsubsection*{");
+		w.append(escapedName);
+		w.append("}\n");
+	}
+
+	static void writePreamble(LatexSink w)
+	{
+		w.append("\\documentclass{article}\n");
+		w.append("\\usepackage[fleqn]{amsmath}\n"); // amsmath must come first.
+		w.append("\\usepackage{breqn}\n"); // For multiline equations.
+		w.append("\\parskip 0pt\n");
+		w.append("\\parindent 0pt\n");
+		w.append("\\oddsidemargin 0cm\n");
+		w.append("\\textwidth 19cm\n");
+		w.append("\\begin{document}\n\n");
+	}
+
+	/**
+	 * @return a fresh context for rendering one document with this renderer's
+	 *         settings
+	 */
+	public RenderContext newContext()
+	{
+		return newContext(null);
+	}
+
+	/**
+	 * @param sections
+	 *            cache of the document's entity sections from previous runs,
+	 *            or null
+	 * @return a fresh context for rendering one document with this renderer's
+	 *         settings
+	 */
+	public RenderContext newContext(RenderCache sections)
+	{
+		ExpressionCache expressions = expressionCacheSize > 0
+		        ? new ExpressionCache(expressionCacheSize, 64L * expressionCacheSize) : null;
+		return new RenderContext(new EntityNameCache(shortFormProvider), expressions, sections);
 	}
 
 	@Override
 	public void render(OWLOntology o, PrintWriter _w) throws OWLRendererException
+	{
+		render(o, _w, newContext());
+	}
+
+	/**
+	 * Renders the ontology using the given context, which afterwards holds
+	 * the cache statistics of the document.
+	 * 
+	 * @param o
+	 * @param _w
+	 * @param context
+	 *            a fresh context from {@link #newContext()}
+	 * @throws OWLRendererException
+	 * @throws ConversionCancelledException
+	 *             if the context's cancellation token stops the rendering
+	 */
+	public void render(OWLOntology o, PrintWriter _w, RenderContext context) throws OWLRendererException
 	{
 		try
 		{
-			LatexWriter w = new LatexWriter(_w);
+			LatexSink w = new LatexSink(_w);
 
-			// Begin preamble
-			w.write("\\documentclass{article}\n");
-			w.write("\\usepackage[fleqn]{amsmath}\n"); // amsmath must come first.
-			w.write("\\usepackage{breqn}\n"); // For multiline equations.
-			w.write("\\parskip 0pt\n");
-			w.write("\\parindent 0pt\n");
-			w.write("\\oddsidemargin 0cm\n");
-			w.write("\\textwidth 19cm\n");
-			w.write("\\begin{document}\n\n");
+			writePreamble(w);
 
-			MyLatexObjectVisitor renderer = new MyLatexObjectVisitor(w, o.getOWLOntologyManager().getOWLDataFactory());
-			Collection<OWLClass> clses = sortEntities(o.classesInSignature());
+			OWLDataFactory df = o.getOWLOntologyManager().getOWLDataFactory();
+			EntityNameCache names = context.getNames();
+			List<OWLClass> clses = sortEntities(o.classesInSignature(), names);
+			// Group all axioms by the entity they describe in one pass
+			EntityAxiomIndex index = EntityAxiomIndex.build(o);
 
 			if(!clses.isEmpty())
 			{
-				w.write("\\subsection*{Classes}\n");
-				for(OWLClass cls : clses)
-				{
-					writeEntity(w, renderer, cls, sortAxioms(o.axioms(cls)));
-				}
+				w.append(SECTION_HEADINGS[0]);
+				writeSection(w, df, 0, clses, index, context);
 			}
 
-			w.write("\\section*{Object properties}\n");
-			sortEntities(o.objectPropertiesInSignature()).forEach(p -> {
-				writeEntity(w, renderer, p, sortAxioms(o.axioms(p)));
-			});
+			w.append(SECTION_HEADINGS[1]);
+			writeSection(w, df, 1, sortEntities(o.objectPropertiesInSignature(), names), index, context);
 
-			w.write("\\section*{Data properties}\n");
-			o.dataPropertiesInSignature().sorted(entityComparator)
-			        .forEach(prop -> writeEntity(w, renderer, prop, sortAxioms(o.axioms(prop))));
+			w.append(SECTION_HEADINGS[2]);
+			writeSection(w, df, 2, sortEntities(o.dataPropertiesInSignature(), names), index, context);
 
-			w.write("\\section*{Individuals}\n");
-			o.individualsInSignature().sorted(entityComparator)
-			        .forEach(i -> writeEntity(w, renderer, i, sortAxioms(o.axioms(i))));
+			w.append(SECTION_HEADINGS[3]);
+			writeSection(w, df, 3, sortEntities(o.individualsInSignature(), names), index, context);
 
-			w.write("\\section*{Datatypes}\n");
-			o.datatypesInSignature().sorted(entityComparator)
-			        .forEach(type -> writeEntity(w, renderer, type, sortAxioms(o.axioms(type, Imports.EXCLUDED))));
+			w.append(SECTION_HEADINGS[4]);
+			writeSection(w, df, 4, sortEntities(o.datatypesInSignature(), names), index, context);
 
-			w.write("\\end{document}\n");
+			w.append("\\end{document}\n");
 			w.flush();
 		}
 		catch(OWLRuntimeException e)
@@ -100,15 +218,275 @@ public class MyLatexRenderer extends AbstractOWLRenderer
 		}
 	}
 
-	protected void writeEntity(LatexWriter w, MyLatexObjectVisitor renderer, OWLEntity cls,
-	        Collection<? extends OWLAxiom> axioms)
+	/**
+	 * Renders the ontology as a master document that includes the entity
+	 * sections in parts of at most partSize entities each, so that a huge
+	 * document can be opened, diffed and compiled piece by piece, e.g. with
+	 * {@code \includeonly}. The parts are rendered and written concurrently
+	 * on the fork/join pool. The master is written last, once every part is
+	 * complete.
+	 * 
+	 * @param o
+	 * @param master
+	 *            receives the master document
+	 * @param partsDir
+	 *            directory of the parts relative to the master document
+	 * @param partSize
+	 *            most entities per part
+	 * @param parts
+	 *            opens the part files
+	 * @param context
+	 *            a fresh context from {@link #newContext()}
+	 * @throws OWLRendererException
+	 * @throws ConversionCancelledException
+	 *             if the context's cancellation token stops the rendering
+	 */
+	public void renderParts(OWLOntology o, PrintWriter master, String partsDir, int partSize, PartOpener parts,
+	        RenderContext context) throws OWLRendererException
+	{
+		try
+		{
+			OWLDataFactory df = o.getOWLOntologyManager().getOWLDataFactory();
+			EntityNameCache names = context.getNames();
+			EntityAxiomIndex index = EntityAxiomIndex.build(o);
+			List<List<? extends OWLEntity>> sections = Arrays.asList(sortEntities(o.classesInSignature(), names),
+			        sortEntities(o.objectPropertiesInSignature(), names),
+			        sortEntities(o.dataPropertiesInSignature(), names),
+			        sortEntities(o.individualsInSignature(), names), sortEntities(o.datatypesInSignature(), names));
+
+			LatexSink w = new LatexSink(master);
+			writePreamble(w);
+			List<ForkJoinTask<?>> tasks = new ArrayList<>();
+			try
+			{
+				for(int section = 0; section < sections.size(); section++)
+				{
+					List<? extends OWLEntity> entities = sections.get(section);
+					countSection(section, entities, index, context);
+					if(entities.isEmpty())
+					{
+						// Only the classes heading is left out without classes
+						if(section > 0)
+						{
+							w.append(SECTION_HEADINGS[section]);
+						}
+						continue;
+					}
+
+					// Each part starts a new page, so the heading goes into the first
+					for(int from = 0; from < entities.size(); from += partSize)
+					{
+						String part = partsDir + "/" + SECTION_NAMES[section] + "-"
+						        + String.format(Locale.ROOT, "%03d", from / partSize + 1);
+						String heading = from == 0 ? SECTION_HEADINGS[section] : null;
+						List<? extends OWLEntity> chunk = entities.subList(from,
+						        Math.min(from + partSize, entities.size()));
+						tasks.add(ForkJoinPool.commonPool()
+						        .submit(() -> writePart(parts, part, heading, df, chunk, index, context)));
+						w.append("\\include{").append(part).append("}\n");
+					}
+				}
+
+				for(ForkJoinTask<?> task : tasks)
+				{
+					task.join();
+				}
+			}
+			catch(RuntimeException e)
+			{
+				// No part may still be written once the caller cleans up
+				tasks.forEach(task -> task.cancel(false));
+				tasks.forEach(ForkJoinTask::quietlyJoin);
+				throw e;
+			}
+
+			w.append("\\end{document}\n");
+			w.flush();
+		}
+		catch(OWLRuntimeException e)
+		{
+			throw new LatexRendererIOException(e);
+		}
+	}
+
+	private void writePart(PartOpener parts, String part, String heading, OWLDataFactory df,
+	        List<? extends OWLEntity> entities, EntityAxiomIndex index, RenderContext context)
+	{
+		try(Writer out = parts.open(part))
+		{
+			LatexSink w = new LatexSink(out);
+			if(heading != null)
+			{
+				w.append(heading);
+			}
+			MyLatexObjectVisitor renderer = newVisitor(w, df, context);
+			for(OWLEntity entity : entities)
+			{
+				writeEntity(w, renderer, entity, index.axioms(entity), context);
+			}
+			w.flush();
+		}
+		catch(IOException e)
+		{
+			throw new OWLRuntimeException(e);
+		}
+	}
+
+	private static void countSection(int section, List<? extends OWLEntity> entities, EntityAxiomIndex index,
+	        RenderContext context)
 	{
-		writeEntitySection(cls, w);
+		long axioms = 0;
+		for(OWLEntity entity : entities)
+		{
+			axioms += index.axioms(entity).size();
+		}
+		context.countSection(section, entities.size(), axioms);
+	}
+
+	/**
+	 * Writes the entity sections for a list of entities, in list order. In
+	 * parallel mode long lists are cut into chunks that are rendered on the
+	 * fork/join pool, each with its own visitor and buffer, and then written
+	 * in their original order, so the output is the same as sequential
+	 * rendering. Only a few chunks are rendered ahead of the writer, so a large
+	 * section is never buffered as a whole.
+	 */
+	private void writeSection(LatexSink w, OWLDataFactory df, int section, List<? extends OWLEntity> entities,
+	        EntityAxiomIndex index, RenderContext context)
+	{
+		countSection(section, entities, index, context);
+
+		if(!parallel || entities.size() < 2 * CHUNK_SIZE)
+		{
+			MyLatexObjectVisitor renderer = newVisitor(w, df, context);
+			for(OWLEntity entity : entities)
+			{
+				writeEntity(w, renderer, entity, index.axioms(entity), context);
+			}
+			return;
+		}
+
+		int ahead = CHUNKS_AHEAD * ForkJoinPool.getCommonPoolParallelism();
+		Deque<ForkJoinTask<LatexSink>> chunks = new ArrayDeque<>();
+		int from = 0;
+		try
+		{
+			while(from < entities.size() || !chunks.isEmpty())
+			{
+				while(from < entities.size() && chunks.size() < ahead)
+				{
+					List<? extends OWLEntity> chunk = entities.subList(from,
+					        Math.min(from + CHUNK_SIZE, entities.size()));
+					chunks.add(ForkJoinPool.commonPool().submit(() -> renderChunk(df, chunk, index, context)));
+					from += CHUNK_SIZE;
+				}
+				w.append(chunks.remove().join());
+			}
+		}
+		catch(RuntimeException e)
+		{
+			// No chunk may still be rendering once the caller cleans up
+			chunks.forEach(chunk -> chunk.cancel(false));
+			chunks.forEach(ForkJoinTask::quietlyJoin);
+			throw e;
+		}
+	}
+
+	private LatexSink renderChunk(OWLDataFactory df, List<? extends OWLEntity> entities, EntityAxiomIndex index,
+	        RenderContext context)
+	{
+		LatexSink w = new LatexSink();
+		MyLatexObjectVisitor renderer = newVisitor(w, df, context);
+		for(OWLEntity entity : entities)
+		{
+			writeEntity(w, renderer, entity, index.axioms(entity), context);
+		}
+		return w;
+	}
+
+	private static MyLatexObjectVisitor newVisitor(LatexSink w, OWLDataFactory df, RenderContext context)
+	{
+		MyLatexObjectVisitor renderer = new MyLatexObjectVisitor(w, df, context.getNames());
+		renderer.setExpressionCache(context.getExpressions());
+		return renderer;
+	}
+
+	/**
+	 * Writes the section of one entity, copying it from the context's
+	 * {@link RenderCache} if the entity and its axioms are unchanged.
+	 */
+	protected void writeEntity(LatexSink w, MyLatexObjectVisitor renderer, OWLEntity cls,
+	        Collection<? extends OWLAxiom> axioms, RenderContext context)
+	{
+		context.getCancellation().check();
+
+		if(!ConversionEvents.ENABLED)
+		{
+			copyOrRenderEntity(w, renderer, cls, axioms, context);
+			return;
+		}
+
+		ConversionEvents.EntitySection event = new ConversionEvents.EntitySection();
+		event.begin();
+		long start = w.position();
+
+		boolean cached = copyOrRenderEntity(w, renderer, cls, axioms, context);
+
+		event.end();
+		if(event.shouldCommit())
+		{
+			event.iri = cls.getIRI().toString();
+			event.entityType = cls.getEntityType().getName();
+			event.axioms = axioms.size();
+			event.chars = w.position() - start;
+			event.cached = cached;
+			event.commit();
+		}
+	}
+
+	/**
+	 * @return true if the section was copied from the render cache
+	 */
+	private boolean copyOrRenderEntity(LatexSink w, MyLatexObjectVisitor renderer, OWLEntity cls,
+	        Collection<? extends OWLAxiom> axioms, RenderContext context)
+	{
+		RenderCache sections = context.getSections();
+		if(sections == null)
+		{
+			renderEntity(w, renderer, cls, axioms, context);
+			return false;
+		}
+
+		byte[] key = sections.key(cls, axioms);
+		String section = sections.get(key);
+		if(section != null)
+		{
+			w.append(section);
+			return true;
+		}
+
+		int start = w.beginCapture();
+		try
+		{
+			renderEntity(w, renderer, cls, axioms, context);
+		}
+		finally
+		{
+			section = w.endCapture(start);
+		}
+		sections.put(key, section);
+		return false;
+	}
+
+	private void renderEntity(LatexSink w, MyLatexObjectVisitor renderer, OWLEntity cls,
+	        Collection<? extends OWLAxiom> axioms, RenderContext context)
+	{
+		writeEntitySection(w, context.getNames().getEscapedName(cls));
 		// Align over subclass and equivalent
 		if(axioms.size() > 0)
 		{
 			// Enter align* environment
-			w.write("\\begin{align*}\n");
+			w.append("\\begin{align*}\n");
 			// Write entity axioms
 			for(Iterator<? extends OWLAxiom> it = axioms.iterator(); it.hasNext();)
 			{
@@ -118,39 +496,59 @@ public class MyLatexRenderer extends AbstractOWLRenderer
 
 				if(it.hasNext())
 				{
-					w.write("\\\\");
+					w.append("\\\\");
 				}
 
-				w.write("\n");
+				w.append("\n");
 			}
-			w.write("\\end{align*}\n\n");
+			w.append("\\end{align*}\n\n");
 		}
 	}
 
-	private <T extends OWLEntity> Collection<T> sortEntities(Stream<T> entities)
+	/**
+	 * Sorts entities by short form, like OWLEntityComparator does for entities
+	 * of one type. Each entity is paired with its key once, so the sort does
+	 * not look up short forms on every comparison; ties keep their encounter
+	 * order. Large signatures are sorted in parallel in parallel mode.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends OWLEntity> List<T> sortEntities(Stream<T> entities, EntityNameCache names)
 	{
-		return asList(entities.sorted(entityComparator));
-	}
+		SortKey<T>[] keys = entities.map(e -> new SortKey<>(names.getShortForm(e), e)).toArray(SortKey[]::new);
 
-	private static Collection<? extends OWLAxiom> sortAxioms(Stream<? extends OWLAxiom> axioms)
-	{
-		return asList(axioms.sorted(new OWLAxiomComparator()));
+		if(parallel && keys.length >= PARALLEL_SORT_THRESHOLD)
+		{
+			Arrays.parallelSort(keys);
+		}
+		else
+		{
+			Arrays.sort(keys);
+		}
+
+		List<T> sorted = new ArrayList<>(keys.length);
+		for(SortKey<T> key : keys)
+		{
+			sorted.add(key.entity);
+		}
+		return sorted;
 	}
 
-	@SuppressWarnings("serial")
-	private static class OWLAxiomComparator implements Comparator<OWLAxiom>, Serializable
+	/** An entity decorated with its sort key. */
+	private static final class SortKey<T extends OWLEntity> implements Comparable<SortKey<T>>
 	{
+		final String	key;
+		final T			entity;
 
-		OWLAxiomComparator()
+		SortKey(String key, T entity)
 		{
+			this.key = key;
+			this.entity = entity;
 		}
 
 		@Override
-		public int compare(@Nullable OWLAxiom o1, @Nullable OWLAxiom o2)
+		public int compareTo(SortKey<T> other)
 		{
-			int index1 = verifyNotNull(o1).getAxiomType().getIndex();
-			int index2 = verifyNotNull(o2).getAxiomType().getIndex();
-			return index1 - index2;
+			return key.compareTo(other.key);
 		}
 	}
 }
@@ -0,0 +1,131 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntologyIRIMapper;
+import org.semanticweb.owlapi.util.AutoIRIMapper;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Maps imported ontology IRIs to local files, so that imports are resolved
+ * without network access. Entries come from XML catalogs (the
+ * {@code <uri name="..." uri="..."/>} entries of an OASIS catalog such as
+ * Protege's catalog-v001.xml) and from scanned directories, in the order they
+ * were added.
+ * <p>
+ * IRIs without a local file are mapped to an {@code offline:} IRI that no
+ * parser can open, so the import fails at once and is skipped by the SILENT
+ * missing import strategy instead of waiting for a connect timeout.
+ */
+public class OntologyCatalog implements OWLOntologyIRIMapper
+{
+	/** Scheme of the document IRI returned for imports that are not in the catalog. */
+	public static final String			OFFLINE_SCHEME	= "offline";
+
+	private final Map<IRI, IRI>			entries			= new HashMap<>();
+	private final List<AutoIRIMapper>	directories		= new ArrayList<>();
+
+	/**
+	 * Adds a directory to scan or an XML catalog file.
+	 *
+	 * @param location
+	 * @throws IOException
+	 *             if a catalog file cannot be read
+	 */
+	public void add(File location) throws IOException
+	{
+		if(location.isDirectory())
+		{
+			addDirectory(location);
+		}
+		else
+		{
+			addCatalogFile(location);
+		}
+	}
+
+	/**
+	 * Maps the ontologies found in a directory tree. The files are only
+	 * inspected when the first import is looked up.
+	 *
+	 * @param dir
+	 */
+	public void addDirectory(File dir)
+	{
+		directories.add(new AutoIRIMapper(dir, true));
+	}
+
+	/**
+	 * Adds the uri entries of an XML catalog. Relative file names are resolved
+	 * against the catalog's directory. The catalog's DTD, if any, is not
+	 * loaded.
+	 *
+	 * @param catalog
+	 * @throws IOException
+	 */
+	public void addCatalogFile(File catalog) throws IOException
+	{
+		try
+		{
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+			DocumentBuilder builder = factory.newDocumentBuilder();
+			NodeList uris = builder.parse(catalog).getElementsByTagName("uri");
+
+			URI base = catalog.toURI();
+			for(int i = 0; i < uris.getLength(); i++)
+			{
+				Element uri = (Element) uris.item(i);
+				String name = uri.getAttribute("name");
+				String file = uri.getAttribute("uri");
+				if(!name.isEmpty() && !file.isEmpty())
+				{
+					entries.putIfAbsent(IRI.create(name), IRI.create(base.resolve(file)));
+				}
+			}
+		}
+		catch(ParserConfigurationException | SAXException | IllegalArgumentException e)
+		{
+			throw new IOException("Invalid catalog " + catalog + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return the number of catalog file entries, not counting scanned
+	 *         directories
+	 */
+	public int size()
+	{
+		return entries.size();
+	}
+
+	@Override
+	public synchronized IRI getDocumentIRI(IRI ontologyIRI)
+	{
+		IRI document = entries.get(ontologyIRI);
+		if(document != null)
+			return document;
+
+		for(AutoIRIMapper dir : directories)
+		{
+			document = dir.getDocumentIRI(ontologyIRI);
+			if(document != null)
+				return document;
+		}
+
+		return IRI.create(OFFLINE_SCHEME + ":" + ontologyIRI);
+	}
+}
@@ -0,0 +1,483 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.formats.ManchesterSyntaxDocumentFormat;
+import org.semanticweb.owlapi.formats.OWLXMLDocumentFormat;
+import org.semanticweb.owlapi.formats.RDFXMLDocumentFormat;
+import org.semanticweb.owlapi.formats.TurtleDocumentFormat;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.MissingImportHandlingStrategy;
+import org.semanticweb.owlapi.model.OWLDocumentFormat;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLOntologyStorageException;
+
+/**
+ * Generates synthetic ontologies of a given shape for scale tests. The same
+ * seed and shape always give the same document.
+ * <p>
+ * Functional syntax is written directly while it is generated, so documents
+ * of any size take constant memory. Other formats are written by loading the
+ * functional syntax into OWLAPI and saving it, which needs the whole
+ * ontology in memory.
+ * <p>
+ * The shape is made of
+ * <ul>
+ * <li>subclass chains of a given depth over all classes,</li>
+ * <li>DisjointClasses axioms of a given width,</li>
+ * <li>SubClassOf axioms with restrictions nested to a given depth,</li>
+ * <li>individuals with class and property assertions,</li>
+ * <li>label and comment annotations on every class.</li>
+ * </ul>
+ */
+public class OntologyGenerator
+{
+	/** Namespace of the generated entities. */
+	public static final String	NS					= "http://example.org/generated#";
+
+	private long				seed				= 1;
+	private int					classes				= 1000;
+	private int					chainDepth			= 10;
+	private int					objectProperties	= 50;
+	private int					dataProperties		= 20;
+	private int					disjointAxioms		= 100;
+	private int					disjointWidth		= 10;
+	private int					nestedAxioms		= 1000;
+	private int					nestingDepth		= 4;
+	private int					individuals			= 1000;
+	private int					assertions			= 5;
+	private int					annotations			= 2;
+
+	private long				axiomCount;
+
+	public static void main(String[] args)
+	{
+		OntologyGenerator generator = new OntologyGenerator();
+		File output = null;
+		try
+		{
+			for(int i = 0; i < args.length; i++)
+			{
+				String arg = args[i];
+				if(!arg.startsWith("--"))
+				{
+					// Fails here rather than with a trace once generating
+					formatOf(arg);
+					output = new File(arg);
+					continue;
+				}
+				if(i + 1 == args.length)
+					throw new IllegalArgumentException("Missing value of " + arg);
+
+				long value = Long.parseLong(args[++i]);
+				switch(arg)
+				{
+					case "--seed":
+						generator.setSeed(value);
+						break;
+					case "--classes":
+						generator.setClasses(count(value));
+						break;
+					case "--chain-depth":
+						generator.setChainDepth(count(value));
+						break;
+					case "--object-properties":
+						generator.setObjectProperties(count(value));
+						break;
+					case "--data-properties":
+						generator.setDataProperties(count(value));
+						break;
+					case "--disjoint":
+						generator.setDisjointAxioms(count(value));
+						break;
+					case "--disjoint-width":
+						generator.setDisjointWidth(count(value));
+						break;
+					case "--nested":
+						generator.setNestedAxioms(count(value));
+						break;
+					case "--nesting-depth":
+						generator.setNestingDepth(count(value));
+						break;
+					case "--individuals":
+						generator.setIndividuals(count(value));
+						break;
+					case "--assertions":
+						generator.setAssertions(count(value));
+						break;
+					case "--annotations":
+						generator.setAnnotations(count(value));
+						break;
+					default:
+						throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+		}
+		catch(IllegalArgumentException e)
+		{
+			System.out.println(e.getMessage());
+			output = null;
+		}
+
+		if(output == null)
+		{
+			System.out.println("Please use the following syntax: ");
+			System.out.println("java -cp GUI_Converter.jar org.dase.cogan.owl2dl_m.OntologyGenerator [--seed n] [--classes n] [--chain-depth n] [--object-properties n] [--data-properties n] [--disjoint n] [--disjoint-width n] [--nested n] [--nesting-depth n] [--individuals n] [--assertions n] [--annotations n] output.ofn|.owl|.rdf|.owx|.ttl|.omn");
+			return;
+		}
+
+		try
+		{
+			long start = System.nanoTime();
+			generator.generate(output);
+			System.out.println("Wrote " + generator.getAxiomCount() + " axioms to " + output + " in "
+			        + (System.nanoTime() - start) / 1000000 + " ms.");
+		}
+		catch(IOException | OWLOntologyCreationException | OWLOntologyStorageException e)
+		{
+			System.out.println("Could not generate " + output + ": " + e.getMessage());
+		}
+	}
+
+	private static int count(long value)
+	{
+		if(value < 0 || value > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Not a valid count: " + value);
+		return (int) value;
+	}
+
+	/**
+	 * Writes the ontology to a file in the format given by its extension.
+	 *
+	 * @param file
+	 * @throws IOException
+	 * @throws OWLOntologyCreationException
+	 *             if the generated document cannot be loaded for conversion
+	 * @throws OWLOntologyStorageException
+	 *             if it cannot be saved in the file's format
+	 */
+	public void generate(File file) throws IOException, OWLOntologyCreationException, OWLOntologyStorageException
+	{
+		OWLDocumentFormat format = formatOf(file.getName());
+		if(format instanceof FunctionalSyntaxDocumentFormat)
+		{
+			try(Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))
+			{
+				generate(out);
+			}
+			return;
+		}
+
+		File tmp = File.createTempFile("generated", ".ofn", file.getAbsoluteFile().getParentFile());
+		try
+		{
+			try(Writer out = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8))
+			{
+				generate(out);
+			}
+
+			OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+			manager.setOntologyLoaderConfiguration(manager.getOntologyLoaderConfiguration()
+			        .setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT));
+			OWLOntology ontology = manager.loadOntologyFromOntologyDocument(tmp);
+			format.asPrefixOWLDocumentFormat().setDefaultPrefix(NS);
+			manager.saveOntology(ontology, format, IRI.create(file.toURI()));
+		}
+		finally
+		{
+			Files.deleteIfExists(tmp.toPath());
+		}
+	}
+
+	/**
+	 * @param name
+	 *            file name
+	 * @return the document format for the file name's extension
+	 */
+	static OWLDocumentFormat formatOf(String name)
+	{
+		String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+		switch(extension)
+		{
+			case "ofn":
+				return new FunctionalSyntaxDocumentFormat();
+			case "owl":
+			case "rdf":
+				return new RDFXMLDocumentFormat();
+			case "owx":
+				return new OWLXMLDocumentFormat();
+			case "ttl":
+				return new TurtleDocumentFormat();
+			case "omn":
+				return new ManchesterSyntaxDocumentFormat();
+			default:
+				throw new IllegalArgumentException("Unknown ontology format: " + name);
+		}
+	}
+
+	/**
+	 * Writes the ontology in functional syntax.
+	 *
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void generate(Writer writer) throws IOException
+	{
+		Writer out = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer, 1 << 16);
+		Random random = new Random(seed);
+		axiomCount = 0;
+
+		out.write("Prefix(:=<" + NS + ">)\n");
+		out.write("Prefix(owl:=<http://www.w3.org/2002/07/owl#>)\n");
+		out.write("Prefix(rdf:=<http://www.w3.org/1999/02/22-rdf-syntax-ns#>)\n");
+		out.write("Prefix(rdfs:=<http://www.w3.org/2000/01/rdf-schema#>)\n");
+		out.write("Prefix(xsd:=<http://www.w3.org/2001/XMLSchema#>)\n\n");
+		out.write("Ontology(<" + NS.substring(0, NS.length() - 1) + ">\n\n");
+
+		declare(out, "Class", "C", classes);
+		declare(out, "ObjectProperty", "p", objectProperties);
+		declare(out, "DataProperty", "d", dataProperties);
+		declare(out, "NamedIndividual", "i", individuals);
+
+		writeClasses(out, random);
+		writeProperties(out, random);
+		writeIndividuals(out, random);
+
+		out.write(")\n");
+		out.flush();
+	}
+
+	private void declare(Writer out, String type, String prefix, int count) throws IOException
+	{
+		for(int i = 0; i < count; i++)
+		{
+			axiom(out, "Declaration(" + type + "(:" + prefix + i + "))");
+		}
+	}
+
+	private void writeClasses(Writer out, Random random) throws IOException
+	{
+		if(classes == 0)
+			return;
+
+		// Chains C0 > C1 > ... of chainDepth classes each
+		for(int i = 1; i < classes; i++)
+		{
+			if(i % chainDepth != 0)
+			{
+				axiom(out, "SubClassOf(:C" + i + " :C" + (i - 1) + ")");
+			}
+		}
+
+		for(int i = 0; i < classes; i++)
+		{
+			for(int a = 0; a < annotations; a++)
+			{
+				String property = a % 2 == 0 ? "rdfs:label" : "rdfs:comment";
+				axiom(out, "AnnotationAssertion(" + property + " :C" + i + " \"Generated class " + i + ", note " + a
+				        + "\"@en)");
+			}
+		}
+
+		int width = Math.min(Math.max(disjointWidth, 2), classes);
+		for(int n = 0; n < disjointAxioms && width >= 2; n++)
+		{
+			StringBuilder axiom = new StringBuilder("DisjointClasses(");
+			int first = random.nextInt(classes - width + 1);
+			for(int i = 0; i < width; i++)
+			{
+				axiom.append(i == 0 ? ":C" : " :C").append(first + i);
+			}
+			axiom(out, axiom.append(')').toString());
+		}
+
+		if(objectProperties > 0)
+		{
+			for(int n = 0; n < nestedAxioms; n++)
+			{
+				StringBuilder axiom = new StringBuilder("SubClassOf(:C").append(random.nextInt(classes)).append(' ');
+				nested(axiom, random, nestingDepth);
+				axiom(out, axiom.append(')').toString());
+			}
+		}
+	}
+
+	/**
+	 * Appends a class expression with restrictions nested depth deep.
+	 */
+	private void nested(StringBuilder expression, Random random, int depth)
+	{
+		if(depth == 0)
+		{
+			expression.append(":C").append(random.nextInt(classes));
+			return;
+		}
+
+		switch(random.nextInt(4))
+		{
+			case 0:
+				expression.append("ObjectSomeValuesFrom(:p").append(random.nextInt(objectProperties)).append(' ');
+				break;
+			case 1:
+				expression.append("ObjectAllValuesFrom(:p").append(random.nextInt(objectProperties)).append(' ');
+				break;
+			case 2:
+				expression.append("ObjectIntersectionOf(:C").append(random.nextInt(classes)).append(' ');
+				break;
+			default:
+				expression.append("ObjectUnionOf(:C").append(random.nextInt(classes)).append(' ');
+				break;
+		}
+		nested(expression, random, depth - 1);
+		expression.append(')');
+	}
+
+	private void writeProperties(Writer out, Random random) throws IOException
+	{
+		for(int i = 0; i < objectProperties && classes > 0; i++)
+		{
+			axiom(out, "ObjectPropertyDomain(:p" + i + " :C" + random.nextInt(classes) + ")");
+			axiom(out, "ObjectPropertyRange(:p" + i + " :C" + random.nextInt(classes) + ")");
+			if(i > 0)
+			{
+				axiom(out, "SubObjectPropertyOf(:p" + i + " :p" + random.nextInt(i) + ")");
+			}
+		}
+		for(int i = 0; i < dataProperties; i++)
+		{
+			axiom(out, "DataPropertyRange(:d" + i + " xsd:integer)");
+		}
+	}
+
+	private void writeIndividuals(Writer out, Random random) throws IOException
+	{
+		for(int i = 0; i < individuals; i++)
+		{
+			if(classes > 0)
+			{
+				axiom(out, "ClassAssertion(:C" + random.nextInt(classes) + " :i" + i + ")");
+			}
+			for(int a = 0; a < assertions; a++)
+			{
+				if(a % 2 == 0 && objectProperties > 0)
+				{
+					axiom(out, "ObjectPropertyAssertion(:p" + random.nextInt(objectProperties) + " :i" + i + " :i"
+					        + random.nextInt(individuals) + ")");
+				}
+				else if(dataProperties > 0)
+				{
+					axiom(out, "DataPropertyAssertion(:d" + random.nextInt(dataProperties) + " :i" + i + " \""
+					        + random.nextInt(1000000) + "\"^^xsd:integer)");
+				}
+			}
+		}
+	}
+
+	private void axiom(Writer out, String axiom) throws IOException
+	{
+		out.write(axiom);
+		out.write('\n');
+		axiomCount++;
+	}
+
+	/**
+	 * @return the number of axioms written by the last generate call,
+	 *         including declarations
+	 */
+	public long getAxiomCount()
+	{
+		return axiomCount;
+	}
+
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+	}
+
+	public void setClasses(int classes)
+	{
+		this.classes = classes;
+	}
+
+	/**
+	 * @param chainDepth
+	 *            number of classes in each subclass chain, at least 1
+	 */
+	public void setChainDepth(int chainDepth)
+	{
+		this.chainDepth = Math.max(1, chainDepth);
+	}
+
+	public void setObjectProperties(int objectProperties)
+	{
+		this.objectProperties = objectProperties;
+	}
+
+	public void setDataProperties(int dataProperties)
+	{
+		this.dataProperties = dataProperties;
+	}
+
+	public void setDisjointAxioms(int disjointAxioms)
+	{
+		this.disjointAxioms = disjointAxioms;
+	}
+
+	/**
+	 * @param disjointWidth
+	 *            number of classes in each DisjointClasses axiom
+	 */
+	public void setDisjointWidth(int disjointWidth)
+	{
+		this.disjointWidth = disjointWidth;
+	}
+
+	public void setNestedAxioms(int nestedAxioms)
+	{
+		this.nestedAxioms = nestedAxioms;
+	}
+
+	/**
+	 * @param nestingDepth
+	 *            number of restrictions or connectives around the innermost
+	 *            class of each nested axiom
+	 */
+	public void setNestingDepth(int nestingDepth)
+	{
+		this.nestingDepth = nestingDepth;
+	}
+
+	public void setIndividuals(int individuals)
+	{
+		this.individuals = individuals;
+	}
+
+	/**
+	 * @param assertions
+	 *            number of property assertions per individual
+	 */
+	public void setAssertions(int assertions)
+	{
+		this.assertions = assertions;
+	}
+
+	/**
+	 * @param annotations
+	 *            number of annotation assertions per class
+	 */
+	public void setAnnotations(int annotations)
+	{
+		this.annotations = annotations;
+	}
+}
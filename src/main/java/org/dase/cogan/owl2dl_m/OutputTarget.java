@@ -0,0 +1,451 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Destination of the documents of one batch: plain .tex files, gzipped .tex.gz
+ * files, or the entries of a single zip archive. Documents are written as UTF-8
+ * through {@link ChannelWriter}s whose buffers come from one pool per target,
+ * so they are reused across the files of the batch. A document is only
+ * complete once it is committed; one that failed is discarded instead. Safe
+ * for concurrent use.
+ */
+public abstract class OutputTarget implements Closeable
+{
+	private static final int	STREAM_BUFFER_SIZE	= 1 << 16;
+
+	protected final BufferPool	pool				= new BufferPool();
+
+	/**
+	 * Opens a document, which must then be either committed or discarded.
+	 *
+	 * @param name
+	 *            document name without extension
+	 * @return a writer for the document
+	 * @throws IOException
+	 */
+	public abstract Writer open(String name) throws IOException;
+
+	/**
+	 * Publishes a complete document. Closes its writer if that has not
+	 * happened yet.
+	 *
+	 * @param document
+	 *            a writer returned by {@link #open(String)}
+	 * @throws IOException
+	 */
+	public abstract void commit(Writer document) throws IOException;
+
+	/**
+	 * Drops an incomplete document. Closes its writer if that has not happened
+	 * yet.
+	 *
+	 * @param document
+	 *            a writer returned by {@link #open(String)}
+	 * @throws IOException
+	 */
+	public abstract void discard(Writer document) throws IOException;
+
+	/**
+	 * @param name
+	 *            document name without extension
+	 * @return where the document is written, for log messages
+	 */
+	public abstract String describe(String name);
+
+	/**
+	 * @param name
+	 *            document name without extension
+	 * @return the file the document is written to, or null if it is not
+	 *         written to a file of its own
+	 */
+	public Path getPath(String name)
+	{
+		return null;
+	}
+
+	/**
+	 * Finishes the batch. Documents opened earlier must be committed or
+	 * discarded first.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+	}
+
+	/**
+	 * @param dir
+	 *            output directory
+	 * @param gzip
+	 *            whether to write gzipped .tex.gz files
+	 * @return a target writing one file per document
+	 */
+	public static OutputTarget files(File dir, boolean gzip)
+	{
+		return new Files(dir.toPath(), gzip);
+	}
+
+	/**
+	 * @param archive
+	 *            the zip file to create
+	 * @return a target writing every document into one zip archive
+	 * @throws IOException
+	 */
+	public static OutputTarget zip(File archive) throws IOException
+	{
+		return new Zip(archive.toPath());
+	}
+
+	private static FileChannel create(Path path) throws IOException
+	{
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+		        StandardOpenOption.WRITE);
+	}
+
+	private static <T extends Writer> T document(Writer writer, Class<T> type)
+	{
+		if(!type.isInstance(writer))
+			throw new IllegalArgumentException("Not a document of this target: " + writer);
+		return type.cast(writer);
+	}
+
+	/**
+	 * One .tex or .tex.gz file per document. A document is written to a
+	 * temporary file next to it and renamed on commit, so a failed conversion
+	 * leaves the previous output untouched rather than a newer, truncated one.
+	 */
+	private static final class Files extends OutputTarget
+	{
+		private final Path		dir;
+		private final String	extension;
+		private final boolean	gzip;
+
+		Files(Path dir, boolean gzip)
+		{
+			this.dir = dir;
+			this.gzip = gzip;
+			this.extension = gzip ? ".tex.gz" : ".tex";
+		}
+
+		@Override
+		public Writer open(String name) throws IOException
+		{
+			// Names may contain directories, e.g. in recursive batches
+			Path path = getPath(name);
+			java.nio.file.Files.createDirectories(path.getParent());
+			Path tmp = java.nio.file.Files.createTempFile(path.getParent(), "." + path.getFileName() + ".", ".tmp");
+			FileChannel file = null;
+			try
+			{
+				file = create(tmp);
+				if(!gzip)
+					return new FileDocument(file, pool, path, tmp);
+
+				OutputStream gz = new GZIPOutputStream(Channels.newOutputStream(file), STREAM_BUFFER_SIZE);
+				return new FileDocument(Channels.newChannel(gz), pool, path, tmp);
+			}
+			catch(IOException | RuntimeException e)
+			{
+				if(file != null)
+				{
+					file.close();
+				}
+				java.nio.file.Files.deleteIfExists(tmp);
+				throw e;
+			}
+		}
+
+		@Override
+		public void commit(Writer document) throws IOException
+		{
+			FileDocument file = document(document, FileDocument.class);
+			if(file.committed)
+				return;
+
+			file.close();
+			java.nio.file.Files.move(file.tmp, file.path, StandardCopyOption.REPLACE_EXISTING,
+			        StandardCopyOption.ATOMIC_MOVE);
+			file.committed = true;
+		}
+
+		/**
+		 * Deletes the temporary file. A committed document is kept.
+		 */
+		@Override
+		public void discard(Writer document) throws IOException
+		{
+			FileDocument file = document(document, FileDocument.class);
+			if(file.committed)
+				return;
+
+			try
+			{
+				file.close();
+			}
+			finally
+			{
+				java.nio.file.Files.deleteIfExists(file.tmp);
+			}
+		}
+
+		@Override
+		public String describe(String name)
+		{
+			return getPath(name).toString();
+		}
+
+		@Override
+		public Path getPath(String name)
+		{
+			return dir.resolve(name + extension);
+		}
+	}
+
+	private static final class FileDocument extends ChannelWriter
+	{
+		final Path			path;
+		final Path			tmp;
+		volatile boolean	committed;
+
+		FileDocument(WritableByteChannel channel, BufferPool pool, Path path, Path tmp)
+		{
+			super(channel, pool, path.toString());
+			this.path = path;
+			this.tmp = tmp;
+		}
+	}
+
+	/**
+	 * All documents as entries of one archive. Each document is encoded into a
+	 * {@link Spool} and added as a whole when it is committed, so concurrent
+	 * conversions do not interleave inside the archive and a failed one leaves
+	 * no entry.
+	 */
+	private static final class Zip extends OutputTarget
+	{
+		private final Path					archive;
+		private final ZipOutputStream		zip;
+		/** Documents neither committed nor discarded yet. */
+		private final Set<ZipDocument>		pending	= ConcurrentHashMap.newKeySet();
+
+		Zip(Path archive) throws IOException
+		{
+			this.archive = archive;
+			// The deflater writes in small pieces, so buffer before the channel
+			this.zip = new ZipOutputStream(
+			        new BufferedOutputStream(Channels.newOutputStream(create(archive)), STREAM_BUFFER_SIZE));
+		}
+
+		@Override
+		public Writer open(String name) throws IOException
+		{
+			ZipDocument document = new ZipDocument(name + ".tex", new Spool(archive.toAbsolutePath().getParent()),
+			        pool);
+			pending.add(document);
+			return document;
+		}
+
+		@Override
+		public void commit(Writer document) throws IOException
+		{
+			ZipDocument entry = document(document, ZipDocument.class);
+			if(!pending.remove(entry))
+				return;
+
+			try
+			{
+				entry.close();
+				addEntry(entry.name, entry.spool);
+			}
+			finally
+			{
+				entry.spool.delete();
+			}
+		}
+
+		@Override
+		public void discard(Writer document) throws IOException
+		{
+			ZipDocument entry = document(document, ZipDocument.class);
+			pending.remove(entry);
+			try
+			{
+				entry.close();
+			}
+			finally
+			{
+				entry.spool.delete();
+			}
+		}
+
+		private void addEntry(String entry, Spool spool) throws IOException
+		{
+			ConversionEvents.Write event = ConversionEvents.ENABLED ? new ConversionEvents.Write() : null;
+			synchronized(zip)
+			{
+				if(event != null)
+				{
+					event.begin();
+				}
+				zip.putNextEntry(new ZipEntry(entry));
+				spool.writeTo(zip);
+				zip.closeEntry();
+			}
+
+			if(event != null)
+			{
+				event.end();
+				if(event.shouldCommit())
+				{
+					event.target = archive + "!" + entry;
+					event.bytes = spool.size();
+					event.commit();
+				}
+			}
+		}
+
+		@Override
+		public String describe(String name)
+		{
+			return archive + "!" + name + ".tex";
+		}
+
+		/**
+		 * Also removes the spools of documents that were never committed.
+		 */
+		@Override
+		public void close() throws IOException
+		{
+			for(ZipDocument document : pending)
+			{
+				discard(document);
+			}
+			synchronized(zip)
+			{
+				zip.close();
+			}
+		}
+	}
+
+	private static final class ZipDocument extends ChannelWriter
+	{
+		final String	name;
+		final Spool		spool;
+
+		ZipDocument(String name, Spool spool, BufferPool pool)
+		{
+			super(Channels.newChannel(spool), pool);
+			this.name = name;
+			this.spool = spool;
+		}
+	}
+
+	/**
+	 * The bytes of one archive entry. They are kept in memory up to
+	 * {@link #MEMORY_LIMIT} and moved to a temporary file beyond it, so a large
+	 * document does not have to fit into the heap next to its ontology.
+	 */
+	private static final class Spool extends OutputStream
+	{
+		private static final int		MEMORY_LIMIT	= 1 << 20;
+
+		private final Path				dir;
+		private ByteArrayOutputStream	memory			= new ByteArrayOutputStream(STREAM_BUFFER_SIZE);
+		private Path					file;
+		private OutputStream			out;
+		private long					size;
+
+		/**
+		 * @param dir
+		 *            directory of the temporary file
+		 */
+		Spool(Path dir)
+		{
+			this.dir = dir;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			if(file == null && memory.size() + len > MEMORY_LIMIT)
+			{
+				file = java.nio.file.Files.createTempFile(dir, ".owl2dl-m-", ".tex");
+				out = new BufferedOutputStream(java.nio.file.Files.newOutputStream(file), STREAM_BUFFER_SIZE);
+				memory.writeTo(out);
+				memory = null;
+			}
+
+			if(file == null)
+			{
+				memory.write(b, off, len);
+			}
+			else
+			{
+				out.write(b, off, len);
+			}
+			size += len;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if(out != null)
+			{
+				out.close();
+			}
+		}
+
+		long size()
+		{
+			return size;
+		}
+
+		/**
+		 * Copies the bytes. The spool must be closed first.
+		 */
+		void writeTo(OutputStream target) throws IOException
+		{
+			if(file == null)
+			{
+				memory.writeTo(target);
+			}
+			else
+			{
+				java.nio.file.Files.copy(file, target);
+			}
+		}
+
+		void delete() throws IOException
+		{
+			memory = null;
+			if(file != null)
+			{
+				close();
+				java.nio.file.Files.deleteIfExists(file);
+			}
+		}
+	}
+}
@@ -0,0 +1,390 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+
+/**
+ * On-disk cache of the entity sections of one document, so that re-rendering
+ * an ontology in which few entities changed copies the unchanged sections
+ * instead of rendering them again.
+ * <p>
+ * A section is keyed by a SHA-256 hash of the entity's type and IRI and the
+ * sorted functional syntax of its axioms, which determine the LaTeX written
+ * for it. The sections are stored in a pack file with an index of the hash,
+ * offset and length of each section. Every run writes a new pack holding the
+ * sections it used and replaces the old one on {@link #commit()}, so entries
+ * of deleted or changed entities do not accumulate.
+ * <p>
+ * The cache is safe for concurrent use. IO errors never fail a conversion:
+ * unreadable entries are misses, and a cache that cannot be written is left
+ * as it was.
+ */
+public class RenderCache implements Closeable
+{
+	private static final int				VERSION		= 1;
+	/**
+	 * Part of every key. Change it whenever the LaTeX written for an entity
+	 * changes, so that existing caches are not used.
+	 */
+	private static final String				SALT		= "owl2dl-m entity section 1";
+	private static final int				KEY_LENGTH	= 32;
+
+	private final Path						index;
+	private final Path						pack;
+	private final Path						newIndex;
+	private final Path						newPack;
+
+	private final Map<ByteBuffer, Location>	old;
+	private final FileChannel				oldPack;
+
+	private final long						generation	= ThreadLocalRandom.current().nextLong();
+	private final Map<ByteBuffer, Location>	written		= new HashMap<>();
+	private FileChannel						out;
+	private long							outPosition;
+
+	private final LongAdder					hits		= new LongAdder();
+	private final LongAdder					misses		= new LongAdder();
+
+	private RenderCache(Path dir, String name) throws IOException
+	{
+		index = dir.resolve(name + ".idx");
+		pack = dir.resolve(name + ".pack");
+		newIndex = dir.resolve(name + ".idx.new");
+		newPack = dir.resolve(name + ".pack.new");
+
+		Map<ByteBuffer, Location> entries = new HashMap<>();
+		FileChannel channel = readIndex(entries);
+		old = entries;
+		oldPack = channel;
+
+		out = FileChannel.open(newPack, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+		        StandardOpenOption.WRITE);
+		ByteBuffer header = ByteBuffer.allocate(Long.BYTES).putLong(0, generation);
+		while(header.hasRemaining())
+		{
+			out.write(header);
+		}
+		outPosition = Long.BYTES;
+	}
+
+	/**
+	 * Opens the cache of one document, creating it if needed.
+	 *
+	 * @param dir
+	 *            the cache directory
+	 * @param name
+	 *            the document name, which may contain '/'-separated directories
+	 * @return the cache
+	 * @throws IOException
+	 *             if the cache cannot be created
+	 */
+	public static RenderCache open(File dir, String name) throws IOException
+	{
+		Path path = dir.toPath().resolve(name);
+		Files.createDirectories(path.getParent());
+		return new RenderCache(path.getParent(), path.getFileName().toString());
+	}
+
+	/**
+	 * @param entity
+	 * @param axioms
+	 *            the axioms rendered in the entity's section
+	 * @return the key of the section
+	 */
+	public byte[] key(OWLEntity entity, Collection<? extends OWLAxiom> axioms)
+	{
+		List<String> texts = new ArrayList<>(axioms.size());
+		for(OWLAxiom axiom : axioms)
+		{
+			texts.add(axiom.toString());
+		}
+		Collections.sort(texts);
+
+		MessageDigest digest = sha256();
+		update(digest, SALT);
+		update(digest, entity.getEntityType().getName());
+		update(digest, entity.getIRI().toString());
+		for(String text : texts)
+		{
+			update(digest, text);
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Looks up a section. A hit is also kept for the next run.
+	 *
+	 * @param key
+	 * @return the cached section, or null
+	 */
+	public String get(byte[] key)
+	{
+		Location location = old.get(ByteBuffer.wrap(key));
+		if(location != null)
+		{
+			try
+			{
+				ByteBuffer bytes = ByteBuffer.allocate(location.length);
+				while(bytes.hasRemaining())
+				{
+					if(oldPack.read(bytes, location.offset + bytes.position()) < 0)
+						throw new IOException("Truncated pack " + pack);
+				}
+				bytes.flip();
+				write(key, bytes.duplicate());
+				hits.increment();
+				return StandardCharsets.UTF_8.decode(bytes).toString();
+			}
+			catch(IOException e)
+			{
+				// Render the section again instead
+			}
+		}
+		misses.increment();
+		return null;
+	}
+
+	/**
+	 * Stores a rendered section.
+	 *
+	 * @param key
+	 * @param section
+	 */
+	public void put(byte[] key, String section)
+	{
+		write(key, StandardCharsets.UTF_8.encode(section));
+	}
+
+	/**
+	 * Replaces the previous contents of the cache with the sections used since
+	 * it was opened. Call after the document was rendered completely.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void commit() throws IOException
+	{
+		if(out == null)
+			return;
+
+		out.force(false);
+		out.close();
+		out = null;
+
+		try(DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(newIndex))))
+		{
+			idx.writeInt(VERSION);
+			idx.writeUTF(SALT);
+			idx.writeLong(generation);
+			idx.writeInt(written.size());
+			for(Map.Entry<ByteBuffer, Location> entry : written.entrySet())
+			{
+				idx.write(entry.getKey().array());
+				idx.writeLong(entry.getValue().offset);
+				idx.writeInt(entry.getValue().length);
+			}
+		}
+
+		// The pack header ties pack and index together, so a crash between
+		// the two moves leaves an unusable cache rather than a wrong one
+		closeOldPack();
+		Files.move(newPack, pack, StandardCopyOption.REPLACE_EXISTING);
+		Files.move(newIndex, index, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Releases the cache, discarding anything not committed.
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		closeOldPack();
+		if(out != null)
+		{
+			out.close();
+			out = null;
+		}
+		Files.deleteIfExists(newPack);
+		Files.deleteIfExists(newIndex);
+	}
+
+	/**
+	 * @return the number of sections taken from the cache
+	 */
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of sections that had to be rendered
+	 */
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	@Override
+	public String toString()
+	{
+		return getHits() + " hits, " + getMisses() + " misses";
+	}
+
+	private synchronized void write(byte[] key, ByteBuffer bytes)
+	{
+		ByteBuffer k = ByteBuffer.wrap(key);
+		if(out == null || written.containsKey(k))
+			return;
+
+		try
+		{
+			long offset = outPosition;
+			int length = bytes.remaining();
+			while(bytes.hasRemaining())
+			{
+				outPosition += out.write(bytes);
+			}
+			written.put(k, new Location(offset, length));
+		}
+		catch(IOException e)
+		{
+			// Stop writing; commit() will keep the previous cache
+			try
+			{
+				out.close();
+			}
+			catch(IOException ignored)
+			{
+			}
+			out = null;
+		}
+	}
+
+	/**
+	 * Reads the previous index into entries.
+	 *
+	 * @return the matching pack, or null if there is no usable cache
+	 */
+	private FileChannel readIndex(Map<ByteBuffer, Location> entries)
+	{
+		long expected;
+		try(DataInputStream idx = new DataInputStream(new BufferedInputStream(Files.newInputStream(index))))
+		{
+			if(idx.readInt() != VERSION || !idx.readUTF().equals(SALT))
+				return null;
+
+			expected = idx.readLong();
+			int count = idx.readInt();
+			for(int i = 0; i < count; i++)
+			{
+				byte[] key = new byte[KEY_LENGTH];
+				idx.readFully(key);
+				entries.put(ByteBuffer.wrap(key), new Location(idx.readLong(), idx.readInt()));
+			}
+		}
+		catch(NoSuchFileException e)
+		{
+			return null;
+		}
+		catch(IOException e)
+		{
+			entries.clear();
+			return null;
+		}
+
+		FileChannel channel = null;
+		try
+		{
+			channel = FileChannel.open(pack, StandardOpenOption.READ);
+			ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+			while(header.hasRemaining() && channel.read(header) >= 0)
+			{
+			}
+			if(!header.hasRemaining() && header.getLong(0) == expected)
+				return channel;
+			channel.close();
+		}
+		catch(IOException e)
+		{
+			// Treated as an empty cache
+			if(channel != null)
+			{
+				try
+				{
+					channel.close();
+				}
+				catch(IOException ignored)
+				{
+				}
+			}
+		}
+		entries.clear();
+		return null;
+	}
+
+	private void closeOldPack() throws IOException
+	{
+		if(oldPack != null && oldPack.isOpen())
+		{
+			oldPack.close();
+		}
+	}
+
+	private static MessageDigest sha256()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			// Every Java platform supports SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String s)
+	{
+		digest.update(s.getBytes(StandardCharsets.UTF_8));
+		// Separator, so that different splits of the same text differ
+		digest.update((byte) 0);
+	}
+
+	/** Position of a section in a pack file. */
+	private static final class Location
+	{
+		final long	offset;
+		final int	length;
+
+		Location(long offset, int length)
+		{
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
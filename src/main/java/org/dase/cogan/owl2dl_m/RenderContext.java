@@ -0,0 +1,136 @@
+package org.dase.cogan.owl2dl_m;
+
+/**
+ * Per-document state shared by {@link MyLatexRenderer} and all
+ * {@link MyLatexObjectVisitor}s rendering the same ontology. A context is
+ * created by {@link MyLatexRenderer#newContext()} and must not be reused for
+ * another document.
+ */
+public class RenderContext
+{
+	private final EntityNameCache	names;
+	private final ExpressionCache	expressions;
+	private final RenderCache		sections;
+	private final long[]			sectionEntities	= new long[MyLatexRenderer.SECTION_HEADINGS.length];
+	private final long[]			sectionAxioms	= new long[MyLatexRenderer.SECTION_HEADINGS.length];
+	private Cancellation			cancellation	= Cancellation.NONE;
+
+	/**
+	 * @param names
+	 *            entity names
+	 * @param expressions
+	 *            rendered class expressions, or null to render every
+	 *            expression
+	 */
+	public RenderContext(EntityNameCache names, ExpressionCache expressions)
+	{
+		this(names, expressions, null);
+	}
+
+	/**
+	 * @param names
+	 *            entity names
+	 * @param expressions
+	 *            rendered class expressions, or null to render every
+	 *            expression
+	 * @param sections
+	 *            entity sections of previous runs, or null to render every
+	 *            section
+	 */
+	public RenderContext(EntityNameCache names, ExpressionCache expressions, RenderCache sections)
+	{
+		this.names = names;
+		this.expressions = expressions;
+		this.sections = sections;
+	}
+
+	/**
+	 * @return the entity name cache
+	 */
+	public EntityNameCache getNames()
+	{
+		return names;
+	}
+
+	/**
+	 * @return the class expression cache, or null if disabled
+	 */
+	public ExpressionCache getExpressions()
+	{
+		return expressions;
+	}
+
+	/**
+	 * @return the entity section cache, or null if disabled
+	 */
+	public RenderCache getSections()
+	{
+		return sections;
+	}
+
+	/**
+	 * @return the token checked between entities
+	 */
+	public Cancellation getCancellation()
+	{
+		return cancellation;
+	}
+
+	/**
+	 * @param cancellation
+	 *            the token checked between entities
+	 */
+	public void setCancellation(Cancellation cancellation)
+	{
+		this.cancellation = cancellation;
+	}
+
+	/**
+	 * Counts rendered entities. Called by the thread writing the document.
+	 *
+	 * @param section
+	 *            index of the section in {@link MyLatexRenderer#SECTION_HEADINGS}
+	 * @param entities
+	 * @param axioms
+	 *            number of axioms in the entities' sections
+	 */
+	void countSection(int section, long entities, long axioms)
+	{
+		sectionEntities[section] += entities;
+		sectionAxioms[section] += axioms;
+	}
+
+	/**
+	 * @param section
+	 * @return the number of entities rendered in the section
+	 */
+	public long getSectionEntities(int section)
+	{
+		return sectionEntities[section];
+	}
+
+	/**
+	 * @param section
+	 * @return the number of axioms rendered in the section, counting an axiom
+	 *         once for each entity it is listed under
+	 */
+	public long getSectionAxioms(int section)
+	{
+		return sectionAxioms[section];
+	}
+
+	@Override
+	public String toString()
+	{
+		String s = "names: " + names;
+		if(expressions != null)
+		{
+			s += "; expressions: " + expressions;
+		}
+		if(sections != null)
+		{
+			s += "; sections: " + sections;
+		}
+		return s;
+	}
+}
@@ -0,0 +1,280 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.dase.cogan.owl2dl_m.EntityRecordSorter.Record;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.io.OWLRendererException;
+import org.semanticweb.owlapi.io.StringDocumentSource;
+import org.semanticweb.owlapi.latex.renderer.LatexRendererIOException;
+import org.semanticweb.owlapi.model.MissingImportHandlingStrategy;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLRuntimeException;
+
+/**
+ * Renders an OWL functional syntax document without loading it as a whole.
+ * The axioms are read in batches; each batch is parsed into a small ontology,
+ * its axioms are rendered by a {@link MyLatexObjectVisitor} and filed under
+ * the entities they describe, exactly as {@link EntityAxiomIndex} does. The
+ * rendered lines go through an {@link EntityRecordSorter} and are then written
+ * section by section, so heap usage is bounded by the batch size and the run
+ * size rather than by the document.
+ * <p>
+ * The output matches {@link MyLatexRenderer}, except that entities with the
+ * same short form are ordered by IRI and the axioms of one type keep their
+ * input order. Imports are not followed.
+ */
+public class StreamingRenderer
+{
+	/** Default number of axioms parsed at once. */
+	public static final int		DEFAULT_BATCH_SIZE	= 10000;
+	/** Default heap used for sorting before records are spilled to disk. */
+	public static final long	DEFAULT_RUN_BYTES	= 64L << 20;
+
+	private int					batchSize			= DEFAULT_BATCH_SIZE;
+	private long				runBytes			= DEFAULT_RUN_BYTES;
+
+	public void setBatchSize(int batchSize)
+	{
+		this.batchSize = batchSize;
+	}
+
+	public void setRunBytes(long runBytes)
+	{
+		this.runBytes = runBytes;
+	}
+
+	/**
+	 * @param file
+	 * @return true if the file can be rendered by this class
+	 * @throws IOException
+	 */
+	public static boolean isFunctionalSyntax(File file) throws IOException
+	{
+		try(Reader in = open(file))
+		{
+			return FunctionalSyntaxSplitter.isFunctionalSyntax(in);
+		}
+	}
+
+	/**
+	 * @param file
+	 *            a functional syntax document
+	 * @param out
+	 *            receives the LaTeX document
+	 * @param context
+	 *            a fresh context from {@link MyLatexRenderer#newContext()}
+	 * @throws IOException
+	 *             if the document or the temporary files cannot be read
+	 * @throws OWLOntologyCreationException
+	 *             if a batch of axioms cannot be parsed
+	 * @throws OWLRendererException
+	 *             if the output cannot be written
+	 */
+	public void render(File file, Writer out, RenderContext context)
+	        throws IOException, OWLOntologyCreationException, OWLRendererException
+	{
+		try(FunctionalSyntaxSplitter in = new FunctionalSyntaxSplitter(open(file));
+		        EntityRecordSorter sorter = new EntityRecordSorter(runBytes))
+		{
+			new Batches(in.getHeader(), sorter, context).readAll(in);
+
+			LatexSink w = new LatexSink(out);
+			MyLatexRenderer.writePreamble(w);
+			SectionWriter sections = new SectionWriter(w, context);
+			sorter.forEachSorted(sections);
+			sections.finish();
+			w.append("\\end{document}\n");
+			w.flush();
+		}
+		catch(OWLRuntimeException e)
+		{
+			throw new LatexRendererIOException(e);
+		}
+	}
+
+	private static Reader open(File file) throws IOException
+	{
+		return new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	/** Parses and renders the axioms of a document batch by batch. */
+	private final class Batches
+	{
+		private final String				header;
+		private final EntityRecordSorter	sorter;
+		private final EntityNameCache		names;
+		private final OWLOntologyManager	manager;
+		private final LatexSink				buffer	= new LatexSink();
+		private final MyLatexObjectVisitor	visitor;
+		private final Cancellation			cancellation;
+		private long						seq;
+
+		Batches(String header, EntityRecordSorter sorter, RenderContext context)
+		{
+			this.header = header;
+			this.sorter = sorter;
+			this.names = context.getNames();
+			this.cancellation = context.getCancellation();
+			this.manager = OWLManager.createOWLOntologyManager();
+			manager.setOntologyLoaderConfiguration(manager.getOntologyLoaderConfiguration()
+			        .setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT));
+			this.visitor = new MyLatexObjectVisitor(buffer, manager.getOWLDataFactory(), names);
+			visitor.setExpressionCache(context.getExpressions());
+		}
+
+		void readAll(FunctionalSyntaxSplitter in) throws IOException, OWLOntologyCreationException
+		{
+			StringBuilder batch = new StringBuilder(header).append("Ontology(\n");
+			int start = batch.length();
+			int count = 0;
+			for(String axiom = in.next(); axiom != null; axiom = in.next())
+			{
+				batch.append(axiom).append('\n');
+				if(++count == batchSize)
+				{
+					addBatch(batch.append(")\n").toString());
+					batch.setLength(start);
+					count = 0;
+				}
+			}
+			if(count > 0)
+			{
+				addBatch(batch.append(")\n").toString());
+			}
+		}
+
+		private void addBatch(String document) throws IOException, OWLOntologyCreationException
+		{
+			cancellation.check();
+			OWLOntology o = manager.loadOntologyFromOntologyDocument(
+			        new StringDocumentSource(document, "batch:", new FunctionalSyntaxDocumentFormat(), null));
+			try
+			{
+				EntityAxiomIndex index = EntityAxiomIndex.build(o);
+				// Axioms filed under several entities are rendered once
+				Map<OWLAxiom, Record> rendered = new IdentityHashMap<>();
+
+				addEntities(0, o.classesInSignature(), index, rendered);
+				addEntities(1, o.objectPropertiesInSignature(), index, rendered);
+				addEntities(2, o.dataPropertiesInSignature(), index, rendered);
+				addEntities(3, o.individualsInSignature(), index, rendered);
+				addEntities(4, o.datatypesInSignature(), index, rendered);
+			}
+			finally
+			{
+				manager.removeOntology(o);
+			}
+		}
+
+		private <T extends OWLEntity> void addEntities(int section, Stream<T> entities, EntityAxiomIndex index,
+		        Map<OWLAxiom, Record> rendered) throws IOException
+		{
+			for(T entity : (Iterable<T>) entities::iterator)
+			{
+				cancellation.check();
+				String key = names.getShortForm(entity);
+				String iri = entity.getIRI().toString();
+				sorter.add(new Record(section, key, iri, -1, 0, names.getEscapedName(entity)));
+
+				for(OWLAxiom axiom : index.axioms(entity))
+				{
+					Record r = rendered.computeIfAbsent(axiom, this::render);
+					sorter.add(new Record(section, key, iri, r.type, r.seq, r.text));
+				}
+			}
+		}
+
+		private Record render(OWLAxiom axiom)
+		{
+			buffer.clear();
+			axiom.accept(visitor);
+			return new Record(0, "", "", axiom.getAxiomType().getIndex(), seq++, buffer.toString());
+		}
+	}
+
+	/**
+	 * Writes sorted records as entity sections, in the layout of
+	 * {@link MyLatexRenderer#writeEntity}.
+	 */
+	private static final class SectionWriter implements Consumer<Record>
+	{
+		private final LatexSink		w;
+		private final RenderContext	context;
+		private int					nextSection;
+		private Record				entity;
+		private boolean				inAlign;
+
+		SectionWriter(LatexSink w, RenderContext context)
+		{
+			this.w = w;
+			this.context = context;
+		}
+
+		@Override
+		public void accept(Record r)
+		{
+			if(entity == null || !entity.sameEntity(r))
+			{
+				context.getCancellation().check();
+				endEntity();
+				startSection(r.section);
+				MyLatexRenderer.writeEntitySection(w, r.text);
+				context.countSection(r.section, 1, 0);
+				entity = r;
+			}
+			else if(r.type >= 0)
+			{
+				context.countSection(r.section, 0, 1);
+				w.append(inAlign ? "\\\\\n" : "\\begin{align*}\n");
+				w.append(r.text);
+				inAlign = true;
+			}
+		}
+
+		void finish()
+		{
+			endEntity();
+			startSection(MyLatexRenderer.SECTION_HEADINGS.length);
+		}
+
+		/**
+		 * Writes the headings up to the given section. Like MyLatexRenderer,
+		 * the classes heading is only written if there are classes.
+		 */
+		private void startSection(int section)
+		{
+			for(; nextSection <= section && nextSection < MyLatexRenderer.SECTION_HEADINGS.length; nextSection++)
+			{
+				if(nextSection > 0 || section == 0)
+				{
+					w.append(MyLatexRenderer.SECTION_HEADINGS[nextSection]);
+				}
+			}
+		}
+
+		private void endEntity()
+		{
+			if(inAlign)
+			{
+				w.append("\n\\end{align*}\n\n");
+				inAlign = false;
+			}
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.dase.cogan.owl2dl_m;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Passes text to another writer, measuring the time spent in it and the
+ * number of characters written. Used to tell the stages of the output
+ * pipeline apart: the time of a stage is the time in its writer minus the
+ * time in the writer after it. Not thread-safe.
+ */
+public class TimingWriter extends Writer
+{
+	private final Writer	out;
+	private long			nanos;
+	private long			chars;
+
+	/**
+	 * @param out
+	 */
+	public TimingWriter(Writer out)
+	{
+		this.out = out;
+	}
+
+	@Override
+	public void write(int c) throws IOException
+	{
+		long start = System.nanoTime();
+		out.write(c);
+		chars++;
+		nanos += System.nanoTime() - start;
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException
+	{
+		long start = System.nanoTime();
+		out.write(cbuf, off, len);
+		chars += len;
+		nanos += System.nanoTime() - start;
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException
+	{
+		long start = System.nanoTime();
+		out.write(str, off, len);
+		chars += len;
+		nanos += System.nanoTime() - start;
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		long start = System.nanoTime();
+		out.flush();
+		nanos += System.nanoTime() - start;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		long start = System.nanoTime();
+		out.close();
+		nanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * @return the time spent in the underlying writer
+	 */
+	public long getNanos()
+	{
+		return nanos;
+	}
+
+	/**
+	 * @return the number of characters written
+	 */
+	public long getChars()
+	{
+		return chars;
+	}
+}
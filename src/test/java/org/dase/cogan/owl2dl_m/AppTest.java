@@ -1,5 +1,41 @@
 package org.dase.cogan.owl2dl_m;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.io.OWLRendererException;
+import org.semanticweb.owlapi.io.StringDocumentSource;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -35,4 +71,800 @@ public class AppTest
     {
         assertTrue( true );
     }
+
+    /**
+     * Line widths of typical rendered axioms, as computed by the original
+     * regex based implementation.
+     */
+    public void testGetLineLength()
+    {
+        assertEquals( 27, App.getLineLength( "\\text{Parent} &\\sqsubseteq \\exists \\text{hasChild}.\\text{Person} " ) );
+        assertEquals( 15, App.getLineLength( "\\text{Bob} : \\lnot (\\text{A} \\sqcup \\text{B})" ) );
+        assertEquals( 24, App.getLineLength(
+                "\\text{age}(\\text{bob} \\{``\\text{42}\\text{''\\^{}\\^{}}\\text{xsd:int}\\})" ) );
+        assertEquals( 21, App.getLineLength( "\\top  &\\sqsubseteq \\leq1\\text{hasMother}^- .\\top " ) );
+        assertEquals( 15, App.getLineLength( "\\text{knows} &\\equiv \\text{knows}^- " ) );
+        assertEquals( 13, App.getLineLength( "\\exists \\text{likes}.\\textsf{Self} " ) );
+        assertEquals( 13, App.getLineLength( "\\text{unclosed" ) );
+    }
+
+    /**
+     * Long lines are broken at operators and wrapped in a split environment,
+     * short lines are left alone.
+     */
+    public void testSplitLine()
+    {
+        String operand = "\\text{Operand} \\sqcap ";
+        String line = "";
+        for( int i = 0; i < 40; i++ )
+        {
+            line += operand;
+        }
+
+        String split = App.splitLine( line );
+        assertTrue( split.startsWith( "\\begin{split}\n" ) );
+        assertTrue( split.endsWith( "\n\\end{split}" ) );
+        assertTrue( split.contains( "\\\\&\\qquad\n\\sqcap" ) );
+        assertEquals( line, split.substring( 14, split.length() - 12 ).replace( "\\\\&\\qquad\n", "" ) );
+
+        assertEquals( operand, App.splitLine( operand ) );
+    }
+
+    /**
+     * Wrapping while writing, in pieces that split lines anywhere, must give
+     * the file that the Scanner based post-processing of a temporary file did
+     */
+    public void testLineWrappingWriter() throws IOException
+    {
+        String operand = "\\text{Operand} \\sqcap ";
+        String line = "";
+        for( int i = 0; i < 40; i++ )
+        {
+            line += operand;
+        }
+        String document = "\\begin{document}\n" + line + "\n\\text{A} \\sqsubseteq \\text{B}\r\n\n" + line + line
+            + "\n\\end{document}";
+
+        StringWriter expected = new StringWriter();
+        try( Scanner reader = new Scanner( document ); PrintWriter pw = new PrintWriter( expected ) )
+        {
+            while( reader.hasNextLine() )
+            {
+                pw.println( App.splitLine( reader.nextLine() ) );
+            }
+        }
+
+        StringWriter wrapped = new StringWriter();
+        try( LineWrappingWriter w = new LineWrappingWriter( wrapped ) )
+        {
+            for( int from = 0, piece = 0; from < document.length(); from += 7, piece++ )
+            {
+                int to = Math.min( from + 7, document.length() );
+                if( piece % 3 == 0 )
+                {
+                    w.write( document, from, to - from );
+                }
+                else if( piece % 3 == 1 )
+                {
+                    w.write( document.substring( from, to ).toCharArray() );
+                }
+                else
+                {
+                    for( int i = from; i < to; i++ )
+                    {
+                        w.write( document.charAt( i ) );
+                    }
+                }
+            }
+        }
+        assertTrue( expected.toString().contains( "\\end{split}" ) );
+        assertEquals( expected.toString(), wrapped.toString() );
+    }
+
+    /**
+     * LatexSink must write the same text as the string operations it replaces
+     */
+    public void testLatexSink()
+    {
+        StringWriter out = new StringWriter();
+        LatexSink sink = new LatexSink( out );
+        sink.append( "\\geq" ).append( 0 ).append( ' ' ).append( -42 ).append( Integer.MAX_VALUE );
+        sink.openBrace().appendEscaped( "a_b#c" ).closeBrace();
+
+        int start = sink.beginCapture();
+        for( int i = 0; i < 5000; i++ )
+        {
+            sink.append( "\\sqcap " );
+        }
+        String captured = sink.endCapture( start );
+        sink.flush();
+
+        String expected = "\\geq0 -42" + Integer.MAX_VALUE + "\\{a\\_b\\#c\\}";
+        assertEquals( expected + captured, out.toString() );
+        assertEquals( 5000 * 7, captured.length() );
+
+        assertEquals( "a\\_b\\#c", LatexSink.escape( "a_b#c" ) );
+        assertSame( "plain", LatexSink.escape( "plain" ) );
+    }
+
+    /**
+     * The splitter must find each axiom despite parentheses in strings, IRIs
+     * and comments
+     */
+    public void testFunctionalSyntaxSplitter() throws IOException
+    {
+        String doc = "# header comment (\n"
+            + "Prefix(:=<http://example.org/o#>)\n"
+            + "Ontology(<http://example.org/o>\n"
+            + "Import(<http://example.org/other>)\n"
+            + "Annotation(rdfs:comment \"an ( \\\" ontology\")\n"
+            + "Declaration(Class(:A))\n"
+            + "# a comment )\n"
+            + "SubClassOf(:A ObjectSomeValuesFrom(:p :B))\n"
+            + "AnnotationAssertion(rdfs:label :A \"a)(b\"@en)\n"
+            + ")\n";
+
+        FunctionalSyntaxSplitter splitter = new FunctionalSyntaxSplitter( new StringReader( doc ) );
+        assertEquals( "Prefix(:=<http://example.org/o#>)", splitter.getHeader().trim() );
+        assertEquals( "Declaration(Class(:A))", splitter.next() );
+        assertEquals( "SubClassOf(:A ObjectSomeValuesFrom(:p :B))", splitter.next() );
+        assertEquals( "AnnotationAssertion(rdfs:label :A \"a)(b\"@en)", splitter.next() );
+        assertNull( splitter.next() );
+
+        assertTrue( FunctionalSyntaxSplitter.isFunctionalSyntax( new StringReader( doc ) ) );
+        assertFalse( FunctionalSyntaxSplitter.isFunctionalSyntax( new StringReader( "<?xml version=\"1.0\"?>" ) ) );
+    }
+
+    public void testOntologyGenerator() throws IOException
+    {
+        OntologyGenerator generator = new OntologyGenerator();
+        generator.setSeed( 7 );
+        generator.setClasses( 50 );
+        generator.setIndividuals( 20 );
+
+        StringWriter first = new StringWriter();
+        generator.generate( first );
+        StringWriter second = new StringWriter();
+        generator.generate( second );
+        assertEquals( first.toString(), second.toString() );
+
+        // Every generated axiom is a top-level item of the document
+        FunctionalSyntaxSplitter splitter = new FunctionalSyntaxSplitter( new StringReader( first.toString() ) );
+        long axioms = 0;
+        while( splitter.next() != null )
+        {
+            axioms++;
+        }
+        assertEquals( generator.getAxiomCount(), axioms );
+    }
+
+    public void testLatencyWindow()
+    {
+        LatencyWindow window = new LatencyWindow( 4 );
+        assertEquals( 0, LatencyWindow.percentile( window.snapshot(), 50 ) );
+
+        // Only the latest four are kept
+        for( long latency = 1; latency <= 6; latency++ )
+        {
+            window.add( latency );
+        }
+        long[] sorted = window.snapshot();
+        assertEquals( 4, sorted.length );
+        assertEquals( 3, LatencyWindow.percentile( sorted, 0 ) );
+        assertEquals( 4, LatencyWindow.percentile( sorted, 50 ) );
+        assertEquals( 6, LatencyWindow.percentile( sorted, 99 ) );
+        assertEquals( 6, LatencyWindow.percentile( sorted, 100 ) );
+    }
+
+    /**
+     * The report must be well-formed JSON, with strings escaped, and
+     * measurements of -1 shown per document but left out of the totals
+     */
+    public void testConversionReport() throws IOException
+    {
+        ConversionStats converted = new ConversionStats( new InputFile( new File( "dir/a \"b\"\\c.owl" ), "a\tb" ) );
+        converted.setStatus( ConversionStats.Status.CONVERTED );
+        converted.addNanos( ConversionStats.Phase.LOAD, 1500000 );
+        converted.setCharsWritten( 10 );
+        converted.setBytesWritten( 100 );
+        converted.startAllocation();
+        converted.stopAllocation();
+        ConversionStats skipped = new ConversionStats( new InputFile( new File( "b.owl" ), "b" ) );
+        skipped.setStatus( ConversionStats.Status.SKIPPED );
+        skipped.addNanos( ConversionStats.Phase.LOAD, 500000 );
+
+        ConversionReport report = new ConversionReport( 2, false );
+        report.finish();
+        StringWriter out = new StringWriter();
+        report.write( out, Arrays.asList( converted, skipped ) );
+
+        Map<?, ?> json = (Map<?, ?>) Json.parse( out.toString() );
+        assertEquals( 2.0, json.get( "files" ) );
+        assertEquals( 1.0, json.get( "converted" ) );
+        assertEquals( 1.0, json.get( "skipped" ) );
+        Map<?, ?> totals = (Map<?, ?>) json.get( "totals" );
+        assertEquals( 2.0, totals.get( "loadMillis" ) );
+        assertEquals( 10.0, totals.get( "charsWritten" ) );
+        assertEquals( 100.0, totals.get( "bytesWritten" ) );
+        assertEquals( (double) Math.max( 0, converted.getAllocatedBytes() ), totals.get( "allocatedBytes" ) );
+
+        List<?> documents = (List<?>) json.get( "documents" );
+        assertEquals( 2, documents.size() );
+        Map<?, ?> first = (Map<?, ?>) documents.get( 0 );
+        assertEquals( converted.getInput().getFile().getPath(), first.get( "input" ) );
+        assertEquals( "a\tb", first.get( "output" ) );
+        assertEquals( "converted", first.get( "status" ) );
+        Map<?, ?> second = (Map<?, ?>) documents.get( 1 );
+        assertEquals( -1.0, second.get( "bytesWritten" ) );
+        assertEquals( -1.0, second.get( "allocatedBytes" ) );
+        assertEquals( MyLatexRenderer.SECTION_NAMES.length, ( (Map<?, ?>) second.get( "sections" ) ).size() );
+
+        StringWriter empty = new StringWriter();
+        report.write( empty, Collections.<ConversionStats> emptyList() );
+        assertEquals( 0, ( (List<?>) ( (Map<?, ?>) Json.parse( empty.toString() ) ).get( "documents" ) ).size() );
+    }
+
+    /**
+     * Cancelling a batch stops the files derived from it but not the other
+     * way round, a budget runs out on its own, and NONE is never cancelled
+     */
+    public void testCancellation() throws InterruptedException
+    {
+        Cancellation batch = Cancellation.create();
+        Cancellation file = batch.withBudget( 0 );
+        Cancellation other = batch.withBudget( 60000 );
+        assertFalse( file.isCancelled() );
+
+        other.cancel();
+        assertTrue( other.isCancelled() );
+        assertFalse( batch.isCancelled() );
+        assertFalse( file.isCancelled() );
+
+        batch.cancel();
+        assertTrue( file.isCancelled() );
+        try
+        {
+            file.check();
+            fail( "A file of a cancelled batch must stop" );
+        }
+        catch( ConversionCancelledException e )
+        {
+            assertEquals( "Cancelled", e.getMessage() );
+        }
+
+        Cancellation budget = Cancellation.create().withBudget( 1 );
+        Thread.sleep( 20 );
+        assertTrue( budget.isCancelled() );
+        try
+        {
+            budget.check();
+            fail( "A file past its budget must stop" );
+        }
+        catch( ConversionCancelledException e )
+        {
+            assertTrue( e.getMessage().contains( "1 ms" ) );
+        }
+
+        Cancellation.NONE.cancel();
+        assertFalse( Cancellation.NONE.isCancelled() );
+        assertFalse( Cancellation.NONE.withBudget( 0 ).isCancelled() );
+        Cancellation.NONE.check();
+    }
+
+    /**
+     * Files are admitted in the order they ask, one over the budget only when
+     * nothing else runs, and only files that ran alone are learned from
+     */
+    public void testHeapScheduler() throws InterruptedException
+    {
+        RecordingEstimator estimator = new RecordingEstimator();
+        HeapScheduler scheduler = new HeapScheduler( 100, estimator );
+        List<String> admitted = Collections.synchronizedList( new ArrayList<>() );
+        Map<String, HeapScheduler.Ticket> tickets = new ConcurrentHashMap<>();
+
+        HeapScheduler.Ticket a = scheduler.admit( input( "a" ), 60 );
+        assertTrue( scheduler.shouldMeasure( a ) );
+        // b does not fit next to a, and c, which would, must not overtake it
+        Thread b = admitLater( scheduler, "b", 60, admitted, tickets );
+        Thread c = admitLater( scheduler, "c", 10, admitted, tickets );
+        assertTrue( admitted.isEmpty() );
+
+        scheduler.release( a, 500 );
+        b.join( 10000 );
+        c.join( 10000 );
+        assertEquals( 2, admitted.size() );
+        assertTrue( admitted.containsAll( Arrays.asList( "b", "c" ) ) );
+        assertEquals( Arrays.asList( "a=500" ), estimator.learned );
+        assertFalse( scheduler.shouldMeasure( tickets.get( "b" ) ) );
+        assertFalse( scheduler.shouldMeasure( tickets.get( "c" ) ) );
+
+        // Over the whole budget: waits for both, then runs alone
+        Thread big = admitLater( scheduler, "big", 1000, admitted, tickets );
+        scheduler.release( tickets.get( "b" ), 500 );
+        assertEquals( 2, admitted.size() );
+        scheduler.release( tickets.get( "c" ), 500 );
+        big.join( 10000 );
+        assertEquals( "big", admitted.get( 2 ) );
+        assertTrue( scheduler.shouldMeasure( tickets.get( "big" ) ) );
+        assertEquals( Arrays.asList( "a=500" ), estimator.learned );
+
+        scheduler.release( tickets.get( "big" ), 5000 );
+        assertEquals( Arrays.asList( "a=500", "big=5000" ), estimator.learned );
+        // A second release of the same ticket does nothing
+        scheduler.release( tickets.get( "big" ), 7000 );
+        assertEquals( 2, estimator.learned.size() );
+    }
+
+    /**
+     * Each entity gets the axioms of the per-entity lookup it replaces,
+     * ordered by axiom type and, within a type, in the order the ontology
+     * returns the axioms of that type
+     */
+    public void testEntityAxiomIndex() throws OWLOntologyCreationException
+    {
+        String ns = "http://example.org/o#";
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory df = manager.getOWLDataFactory();
+        OWLOntology o = manager.createOntology( IRI.create( "http://example.org/o" ) );
+        OWLClass a = df.getOWLClass( IRI.create( ns, "A" ) );
+        OWLObjectProperty p = df.getOWLObjectProperty( IRI.create( ns, "p" ) );
+
+        List<OWLAxiom> axioms = new ArrayList<>();
+        for( int i = 0; i < 20; i++ )
+        {
+            OWLClass other = df.getOWLClass( IRI.create( ns, "B" + i ) );
+            axioms.add( df.getOWLSubClassOfAxiom( a, other ) );
+            axioms.add( df.getOWLSubClassOfAxiom( a, df.getOWLObjectSomeValuesFrom( p, other ) ) );
+            if( i % 3 == 0 )
+            {
+                axioms.add( df.getOWLEquivalentClassesAxiom( a, other ) );
+                axioms.add( df.getOWLDisjointClassesAxiom( a, other ) );
+            }
+        }
+        axioms.add( df.getOWLInverseObjectPropertiesAxiom( p, p ) );
+        manager.addAxioms( o, axioms.stream() );
+
+        EntityAxiomIndex index = EntityAxiomIndex.build( o );
+        List<OWLAxiom> indexed = index.axioms( a );
+        Set<OWLAxiom> lookup = o.axioms( a ).collect( Collectors.toSet() );
+        assertEquals( lookup.size(), indexed.size() );
+        assertEquals( lookup, indexed.stream().collect( Collectors.toSet() ) );
+
+        List<AxiomType<?>> types = new ArrayList<>( AxiomType.AXIOM_TYPES );
+        types.sort( Comparator.comparingInt( AxiomType::getIndex ) );
+        List<OWLAxiom> expected = new ArrayList<>();
+        for( AxiomType<?> type : types )
+        {
+            o.axioms( type ).filter( lookup::contains ).forEach( expected::add );
+        }
+        assertEquals( expected, indexed );
+
+        // Naming p twice files the axiom once
+        assertEquals( 1, index.axioms( p ).size() );
+    }
+
+    /**
+     * Parallel rendering must write exactly the document sequential rendering
+     * writes. The classes section is long enough to be cut into chunks.
+     */
+    public void testParallelRender() throws IOException, OWLOntologyCreationException, OWLRendererException
+    {
+        OWLOntology o = generatedOntology( 2000 );
+
+        MyLatexRenderer sequential = new MyLatexRenderer();
+        sequential.setParallel( false );
+        MyLatexRenderer parallel = new MyLatexRenderer();
+        parallel.setParallel( true );
+
+        String expected = render( sequential, o );
+        assertTrue( expected.contains( "\\end{document}" ) );
+        assertEquals( expected, render( parallel, o ) );
+    }
+
+    /**
+     * Axioms written from cached fragments must read exactly as rendered ones,
+     * both without pretty printing (SubClassOf) and with it (the others)
+     */
+    public void testExpressionCache()
+    {
+        String ns = "http://example.org/o#";
+        OWLDataFactory df = OWLManager.getOWLDataFactory();
+        OWLClass a = df.getOWLClass( IRI.create( ns, "A" ) );
+        OWLClass b = df.getOWLClass( IRI.create( ns, "B" ) );
+        OWLClass c = df.getOWLClass( IRI.create( ns, "C" ) );
+        OWLObjectProperty p = df.getOWLObjectProperty( IRI.create( ns, "p" ) );
+        OWLNamedIndividual i = df.getOWLNamedIndividual( IRI.create( ns, "i" ) );
+        OWLClassExpression nested = df.getOWLObjectIntersectionOf( b,
+                df.getOWLObjectSomeValuesFrom( p, df.getOWLObjectUnionOf( b, df.getOWLObjectComplementOf( c ) ) ) );
+
+        List<OWLAxiom> axioms = Arrays.asList( df.getOWLSubClassOfAxiom( a, nested ),
+                df.getOWLSubClassOfAxiom( nested, a ), df.getOWLEquivalentClassesAxiom( a, nested ),
+                df.getOWLClassAssertionAxiom( nested, i ), df.getOWLDisjointClassesAxiom( c, nested ),
+                df.getOWLSubClassOfAxiom( a, nested ) );
+
+        String expected = renderAxioms( df, axioms, null );
+        ExpressionCache cache = new ExpressionCache( 1000, 1 << 20 );
+        assertEquals( expected, renderAxioms( df, axioms, cache ) );
+        assertTrue( cache.getHits() > 0 );
+        // Everything from the warm cache
+        long misses = cache.getMisses();
+        assertEquals( expected, renderAxioms( df, axioms, cache ) );
+        assertEquals( misses, cache.getMisses() );
+    }
+
+    /**
+     * A whole document reads the same with and without the expression cache
+     */
+    public void testExpressionCacheDocument() throws IOException, OWLOntologyCreationException, OWLRendererException
+    {
+        OWLOntology o = generatedOntology( 300 );
+
+        MyLatexRenderer uncached = new MyLatexRenderer();
+        uncached.setExpressionCacheSize( 0 );
+        MyLatexRenderer cached = new MyLatexRenderer();
+        cached.setExpressionCacheSize( 4096 );
+        assertEquals( render( uncached, o ), render( cached, o ) );
+    }
+
+    /**
+     * A document rendered from a warm render cache, sequentially or in
+     * parallel chunks, reads exactly as one rendered without it
+     */
+    public void testRenderCache() throws IOException, OWLOntologyCreationException, OWLRendererException
+    {
+        OWLOntology o = generatedOntology( 600 );
+        MyLatexRenderer renderer = new MyLatexRenderer();
+        String expected = render( renderer, o );
+
+        Path dir = Files.createTempDirectory( "owl2dl-m-cache" );
+        try
+        {
+            long entities;
+            try( RenderCache cold = RenderCache.open( dir.toFile(), "sub/doc" ) )
+            {
+                assertEquals( expected, render( renderer, o, renderer.newContext( cold ) ) );
+                assertEquals( 0, cold.getHits() );
+                entities = cold.getMisses();
+                assertTrue( entities > 0 );
+                cold.commit();
+            }
+
+            for( boolean parallel : new boolean[] { false, true } )
+            {
+                renderer.setParallel( parallel );
+                try( RenderCache warm = RenderCache.open( dir.toFile(), "sub/doc" ) )
+                {
+                    assertEquals( expected, render( renderer, o, renderer.newContext( warm ) ) );
+                    assertEquals( entities, warm.getHits() );
+                    assertEquals( 0, warm.getMisses() );
+                    warm.commit();
+                }
+            }
+        }
+        finally
+        {
+            deleteTree( dir );
+        }
+    }
+
+    /**
+     * The master with every include replaced by its part reads exactly as the
+     * single-file document
+     */
+    public void testRenderParts() throws IOException, OWLOntologyCreationException, OWLRendererException
+    {
+        OWLOntology o = generatedOntology( 300 );
+        MyLatexRenderer renderer = new MyLatexRenderer();
+
+        Map<String, StringWriter> parts = new ConcurrentHashMap<>();
+        StringWriter master = new StringWriter();
+        PrintWriter pw = new PrintWriter( master );
+        renderer.renderParts( o, pw, "doc-parts", 40, part -> {
+            StringWriter w = new StringWriter();
+            parts.put( part, w );
+            return w;
+        }, renderer.newContext() );
+        pw.flush();
+        assertTrue( parts.containsKey( "doc-parts/classes-008" ) );
+
+        StringBuilder joined = new StringBuilder();
+        for( String line : master.toString().split( "\n" ) )
+        {
+            if( line.startsWith( "\\include{" ) )
+            {
+                joined.append( parts.remove( line.substring( "\\include{".length(), line.length() - 1 ) ) );
+            }
+            else
+            {
+                joined.append( line ).append( '\n' );
+            }
+        }
+        assertTrue( parts.isEmpty() );
+        assertEquals( render( renderer, o ), joined.toString() );
+    }
+
+    /**
+     * Committing the parts of a document deletes the parts an earlier run
+     * wrote that it no longer has, and keeps everything else
+     */
+    public void testDocumentPartsDeleteStale() throws IOException
+    {
+        Path dir = Files.createTempDirectory( "owl2dl-m-parts" );
+        try( OutputTarget target = OutputTarget.files( dir.toFile(), false ) )
+        {
+            writeParts( target, "doc-parts/classes-001", "doc-parts/classes-002", "doc-parts/individuals-001" );
+            Path parts = dir.resolve( "sub/doc-parts" );
+            Files.write( parts.resolve( "notes.txt" ), new byte[0] );
+            assertTrue( Files.exists( parts.resolve( "classes-002.tex" ) ) );
+
+            writeParts( target, "doc-parts/classes-001" );
+            assertTrue( Files.exists( parts.resolve( "classes-001.tex" ) ) );
+            assertFalse( Files.exists( parts.resolve( "classes-002.tex" ) ) );
+            assertFalse( Files.exists( parts.resolve( "individuals-001.tex" ) ) );
+            assertTrue( Files.exists( parts.resolve( "notes.txt" ) ) );
+        }
+        finally
+        {
+            deleteTree( dir );
+        }
+    }
+
+    private static void deleteTree( Path dir ) throws IOException
+    {
+        try( Stream<Path> files = Files.walk( dir ) )
+        {
+            files.sorted( Comparator.reverseOrder() ).map( Path::toFile ).forEach( File::delete );
+        }
+    }
+
+    private static void writeParts( OutputTarget target, String... names ) throws IOException
+    {
+        DocumentParts parts = new DocumentParts( target, "sub/doc", Cancellation.NONE );
+        for( String name : names )
+        {
+            try( Writer w = parts.open( name ) )
+            {
+                w.write( name + "\n" );
+            }
+        }
+        parts.commit();
+    }
+
+    private static String renderAxioms( OWLDataFactory df, List<OWLAxiom> axioms, ExpressionCache cache )
+    {
+        StringWriter out = new StringWriter();
+        LatexSink sink = new LatexSink( out );
+        MyLatexObjectVisitor visitor = new MyLatexObjectVisitor( sink, df );
+        visitor.setExpressionCache( cache );
+        for( OWLAxiom axiom : axioms )
+        {
+            axiom.accept( visitor );
+            sink.append( '\n' );
+        }
+        sink.flush();
+        return out.toString();
+    }
+
+    /**
+     * @return a generated ontology with the given number of classes, and
+     *         individuals, properties and expressions in proportion
+     */
+    private static OWLOntology generatedOntology( int classes ) throws IOException, OWLOntologyCreationException
+    {
+        OntologyGenerator generator = new OntologyGenerator();
+        generator.setSeed( 11 );
+        generator.setClasses( classes );
+        generator.setIndividuals( classes / 4 );
+        StringWriter document = new StringWriter();
+        generator.generate( document );
+
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        return manager.loadOntologyFromOntologyDocument( new StringDocumentSource( document.toString() ) );
+    }
+
+    private static String render( MyLatexRenderer renderer, OWLOntology o ) throws OWLRendererException
+    {
+        return render( renderer, o, renderer.newContext() );
+    }
+
+    private static String render( MyLatexRenderer renderer, OWLOntology o, RenderContext context )
+            throws OWLRendererException
+    {
+        StringWriter out = new StringWriter();
+        PrintWriter pw = new PrintWriter( out );
+        renderer.render( o, pw, context );
+        pw.flush();
+        return out.toString();
+    }
+
+    private static InputFile input( String name )
+    {
+        return new InputFile( new File( name + ".owl" ), name );
+    }
+
+    /**
+     * @return a thread that admits the file, once it waits for admission
+     */
+    private static Thread admitLater( HeapScheduler scheduler, String name, long estimate, List<String> admitted,
+            Map<String, HeapScheduler.Ticket> tickets ) throws InterruptedException
+    {
+        Thread thread = new Thread( () -> {
+            try
+            {
+                tickets.put( name, scheduler.admit( input( name ), estimate ) );
+                admitted.add( name );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        } );
+        thread.setDaemon( true );
+        thread.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while( thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 1 );
+        }
+        assertEquals( Thread.State.WAITING, thread.getState() );
+        return thread;
+    }
+
+    /** Learns from every file and records what it was taught. */
+    private static final class RecordingEstimator extends HeapEstimator
+    {
+        final List<String> learned = Collections.synchronizedList( new ArrayList<>() );
+
+        RecordingEstimator()
+        {
+            super( null );
+        }
+
+        @Override
+        public boolean learnsFrom( File file )
+        {
+            return true;
+        }
+
+        @Override
+        public void learn( File file, long heapBytes )
+        {
+            learned.add( file.getName().replace( ".owl", "" ) + "=" + heapBytes );
+        }
+    }
+
+    /** Just enough of a strict JSON parser to check the report. */
+    private static final class Json
+    {
+        private final String text;
+        private int pos;
+
+        private Json( String text )
+        {
+            this.text = text;
+        }
+
+        /**
+         * @return maps, lists, strings, doubles, booleans and nulls
+         */
+        static Object parse( String text )
+        {
+            Json json = new Json( text );
+            Object value = json.value();
+            json.skipSpace();
+            assertEquals( "end of the document", text.length(), json.pos );
+            return value;
+        }
+
+        private Object value()
+        {
+            skipSpace();
+            char c = text.charAt( pos );
+            if( c == '{' )
+            {
+                Map<String, Object> object = new LinkedHashMap<>();
+                pos++;
+                if( !accept( '}' ) )
+                {
+                    do
+                    {
+                        skipSpace();
+                        String name = string();
+                        expect( ':' );
+                        assertNull( "duplicate " + name, object.put( name, value() ) );
+                    }
+                    while( accept( ',' ) );
+                    expect( '}' );
+                }
+                return object;
+            }
+            if( c == '[' )
+            {
+                List<Object> array = new ArrayList<>();
+                pos++;
+                if( !accept( ']' ) )
+                {
+                    do
+                    {
+                        array.add( value() );
+                    }
+                    while( accept( ',' ) );
+                    expect( ']' );
+                }
+                return array;
+            }
+            if( c == '"' )
+                return string();
+            for( String literal : new String[] { "true", "false", "null" } )
+            {
+                if( text.startsWith( literal, pos ) )
+                {
+                    pos += literal.length();
+                    return literal.equals( "null" ) ? null : Boolean.valueOf( literal );
+                }
+            }
+
+            int start = pos;
+            while( pos < text.length() && "+-0123456789.eE".indexOf( text.charAt( pos ) ) >= 0 )
+            {
+                pos++;
+            }
+            String number = text.substring( start, pos );
+            assertTrue( "number at " + start, number.matches( "-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?" ) );
+            return Double.valueOf( number );
+        }
+
+        private String string()
+        {
+            expect( '"' );
+            StringBuilder s = new StringBuilder();
+            for( char c = text.charAt( pos++ ); c != '"'; c = text.charAt( pos++ ) )
+            {
+                assertTrue( "control character at " + pos, c >= 0x20 );
+                if( c != '\\' )
+                {
+                    s.append( c );
+                    continue;
+                }
+
+                char escaped = text.charAt( pos++ );
+                int i = "\"\\/bfnrt".indexOf( escaped );
+                if( escaped == 'u' )
+                {
+                    s.append( (char) Integer.parseInt( text.substring( pos, pos + 4 ), 16 ) );
+                    pos += 4;
+                }
+                else
+                {
+                    assertTrue( "escape at " + pos, i >= 0 );
+                    s.append( "\"\\/\b\f\n\r\t".charAt( i ) );
+                }
+            }
+            return s.toString();
+        }
+
+        private boolean accept( char c )
+        {
+            skipSpace();
+            if( pos < text.length() && text.charAt( pos ) == c )
+            {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect( char c )
+        {
+            assertTrue( "'" + c + "' at " + pos, accept( c ) );
+        }
+
+        private void skipSpace()
+        {
+            while( pos < text.length() && " \t\r\n".indexOf( text.charAt( pos ) ) >= 0 )
+            {
+                pos++;
+            }
+        }
+    }
 }